@@ -0,0 +1,120 @@
+package org.example.sockstask.benchmark;
+
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.entity.SockColor;
+import org.example.sockstask.repository.SockColorRepository;
+import org.example.sockstask.repository.SockMovementRepository;
+import org.example.sockstask.repository.SockRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Данные и заглушки для бенчмарков без Spring-контекста и БД.
+ */
+public final class BenchmarkData {
+
+    private static final String[] COLORS = {"black", "blue", "green", "grey", "red", "white", "yellow"};
+
+    private BenchmarkData() {
+    }
+
+    public static List<Sock> socks(int size) {
+        Random random = new Random(42);
+        List<Sock> socks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            socks.add(new Sock((long) i + 1, COLORS[random.nextInt(COLORS.length)],
+                    random.nextInt(10_000) / 100f, 1 + random.nextInt(1_000)));
+        }
+        return socks;
+    }
+
+    public static String csv(int rows) {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("color,cottonPercentage,quantity\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(COLORS[random.nextInt(COLORS.length)]).append(',')
+                    .append(random.nextInt(10_000) / 100f).append(',')
+                    .append(1 + random.nextInt(1_000)).append('\n');
+        }
+        return csv.toString();
+    }
+
+    /**
+     * Репозиторий, у которого findAll возвращает заданный список, а остальные методы ничего не делают.
+     */
+    public static SockRepository repository(List<Sock> socks) {
+        return (SockRepository) Proxy.newProxyInstance(
+                SockRepository.class.getClassLoader(),
+                new Class<?>[]{SockRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll", "findAllByKeys" -> socks;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkSockRepository";
+                    default -> null;
+                });
+    }
+
+    /**
+     * Журнал движений, который ничего не записывает.
+     */
+    public static SockMovementRepository movementRepository() {
+        return (SockMovementRepository) Proxy.newProxyInstance(
+                SockMovementRepository.class.getClassLoader(),
+                new Class<?>[]{SockMovementRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkSockMovementRepository";
+                    default -> null;
+                });
+    }
+
+    /**
+     * Словарь, заранее заполненный цветами из COLORS.
+     */
+    public static ColorDictionary colorDictionary() {
+        List<SockColor> colors = new ArrayList<>();
+        for (int i = 0; i < COLORS.length; i++) {
+            colors.add(new SockColor(i + 1, COLORS[i]));
+        }
+        SockColorRepository repository = (SockColorRepository) Proxy.newProxyInstance(
+                SockColorRepository.class.getClassLoader(),
+                new Class<?>[]{SockColorRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findAll" -> colors;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkSockColorRepository";
+                    default -> null;
+                });
+        ColorDictionary colorDictionary = new ColorDictionary(repository, transactionManager());
+        colorDictionary.load();
+        return colorDictionary;
+    }
+
+    public static PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+}
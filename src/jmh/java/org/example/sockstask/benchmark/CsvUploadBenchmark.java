@@ -0,0 +1,50 @@
+package org.example.sockstask.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.mapper.SockMapperImpl;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockMovementRepository;
+import org.example.sockstask.service.impl.MovementLedger;
+import org.example.sockstask.service.impl.SockServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разбор CSV и группировка строк по чанкам в uploadFromFile, запись в БД заменена заглушкой.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CsvUploadBenchmark {
+
+    @Param({"1000", "100000", "500000"})
+    private int rows;
+
+    private SockServiceImpl sockService;
+    private MockMultipartFile file;
+
+    @Setup
+    public void setUp() {
+        SocksProperties socksProperties = new SocksProperties();
+        SockMovementRepository movementRepository = BenchmarkData.movementRepository();
+        MovementLedger movementLedger = new MovementLedger(movementRepository, socksProperties,
+                BenchmarkData.transactionManager(), event -> {
+        });
+        sockService = new SockServiceImpl(
+                BenchmarkData.repository(List.of()), new SockMapperImpl(), socksProperties,
+                BenchmarkData.transactionManager(), new ObjectMapper(), null, null, event -> {
+                }, new SockMetrics(new SimpleMeterRegistry()), movementLedger, movementRepository, null,
+                BenchmarkData.colorDictionary(), null, null);
+        file = new MockMultipartFile("socks.csv", BenchmarkData.csv(rows).getBytes());
+    }
+
+    @Benchmark
+    public void uploadFromFile() {
+        sockService.uploadFromFile(file);
+    }
+}
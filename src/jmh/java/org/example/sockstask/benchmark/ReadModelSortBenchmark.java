@@ -0,0 +1,50 @@
+package org.example.sockstask.benchmark;
+
+import org.example.sockstask.cache.SockReadModel;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.SockFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сортировка и фильтрация в JVM: после переноса ORDER BY в БД так работает только SockReadModel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ReadModelSortBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    private int size;
+
+    @Param({"COLOR", "COTTON_PERCENTAGE", "NOTHING"})
+    private FieldForSort fieldForSort;
+
+    private SockReadModel sockReadModel;
+    private final SockFilter all = new SockFilter(null, Comparison.equal, null);
+    private final SockFilter range = new SockFilter(null, Comparison.between, List.of(30f, 70f));
+
+    @Setup
+    public void setUp() {
+        SocksProperties properties = new SocksProperties();
+        properties.getReadModel().setEnabled(true);
+        sockReadModel = new SockReadModel(
+                BenchmarkData.repository(BenchmarkData.socks(size)), properties, BenchmarkData.transactionManager());
+        sockReadModel.load();
+    }
+
+    @Benchmark
+    public List<Sock> sortAll() {
+        return sockReadModel.findAllWithFilters(all, fieldForSort, false, null, null);
+    }
+
+    @Benchmark
+    public List<Sock> sortRangeFirstPage() {
+        return sockReadModel.findAllWithFilters(range, fieldForSort, true, null, 50);
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.sockstask.benchmark;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.mapper.SockMapper;
+import org.example.sockstask.mapper.SockMapperImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация ответа GET /api/socks в JSON, CBOR и Smile. Размер ответа каждого формата
+ * проверяет BinaryFormatConfigTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SerializationBenchmark {
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    private String format;
+
+    private ObjectMapper objectMapper;
+    private SocksResponse response;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws IOException {
+        JsonFactory factory = switch (format) {
+            case "CBOR" -> new CBORFactory();
+            case "SMILE" -> new SmileFactory();
+            default -> new JsonFactory();
+        };
+        objectMapper = new ObjectMapper(factory);
+        SockMapper sockMapper = new SockMapperImpl();
+        response = SocksResponse.builder()
+                .socks(BenchmarkData.socks(size).stream().map(sockMapper::toSockDto).toList())
+                .build();
+        payload = objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public SocksResponse deserialize() throws IOException {
+        return objectMapper.readValue(payload, SocksResponse.class);
+    }
+}
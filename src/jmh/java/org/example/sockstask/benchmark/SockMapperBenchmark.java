@@ -0,0 +1,32 @@
+package org.example.sockstask.benchmark;
+
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.mapper.SockMapper;
+import org.example.sockstask.mapper.SockMapperImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SockMapperBenchmark {
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    private final SockMapper sockMapper = new SockMapperImpl();
+    private List<Sock> socks;
+
+    @Setup
+    public void setUp() {
+        socks = BenchmarkData.socks(size);
+    }
+
+    @Benchmark
+    public List<SockDto> toSockDtoList() {
+        return socks.stream().map(sockMapper::toSockDto).toList();
+    }
+}
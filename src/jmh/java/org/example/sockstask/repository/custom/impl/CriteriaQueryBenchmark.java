@@ -0,0 +1,65 @@
+package org.example.sockstask.repository.custom.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.TypedQuery;
+import org.example.sockstask.cache.InventoryVersion;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.SockFilter;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение запроса с фильтрами и его разбор Hibernate в findAllWithFilters без выполнения в БД.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CriteriaQueryBenchmark {
+
+    @Param({"equal", "between"})
+    private Comparison comparison;
+
+    @Param({"true", "false"})
+    private boolean withColor;
+
+    private SessionFactory sessionFactory;
+    private Session session;
+    private SockRepoImpl sockRepo;
+    private SockFilter filter;
+
+    @Setup
+    public void setUp() {
+        Configuration configuration = new Configuration()
+                .addAnnotatedClass(Sock.class)
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect")
+                .setProperty("hibernate.boot.allow_jdbc_metadata_access", "false");
+        // соединение не открывается: запрос только строится, но не выполняется
+        configuration.getProperties().put("hibernate.connection.datasource", new SimpleDriverDataSource());
+        sessionFactory = configuration.buildSessionFactory();
+        session = sessionFactory.openSession();
+        SocksProperties properties = new SocksProperties();
+        sockRepo = new SockRepoImpl(session, properties, new InventoryVersion(properties), new SimpleMeterRegistry());
+        filter = new SockFilter(withColor ? "white" : null, comparison,
+                comparison == Comparison.between ? List.of(30f, 70f) : List.of(50f));
+    }
+
+    @TearDown
+    public void tearDown() {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public TypedQuery<Sock> filteredQuery() {
+        return sockRepo.filteredQuery(filter, FieldForSort.COTTON_PERCENTAGE, true, null);
+    }
+}
@@ -26,7 +26,7 @@ public class LoggingAspect {
     }
 
     @AfterReturning(pointcut = "exceptionHandlerMethods()", returning = "result")
-    public void logBeforeExceptionHandlerMethods(JoinPoint joinPoint, ResponseEntity<String> result) {
+    public void logBeforeExceptionHandlerMethods(JoinPoint joinPoint, ResponseEntity<?> result) {
         log.error("Catch exception {} with message: {}",
                 joinPoint.getArgs()[0].getClass().getSimpleName(), result.getBody());
     }
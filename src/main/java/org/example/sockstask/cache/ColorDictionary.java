@@ -0,0 +1,135 @@
+package org.example.sockstask.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.entity.SockColor;
+import org.example.sockstask.repository.SockColorRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь цветов sock_color: цвета сравниваются без учета регистра, и позиция хранится под написанием,
+ * с которым цвет встретился первым. Словарь целиком держится в памяти, поэтому для каждого цвета
+ * используется один экземпляр строки, а сравнение цветов обычно сводится к сравнению ссылок.
+ * Цвет в написании словаря находится без перевода в нижний регистр.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ColorDictionary {
+
+    private final SockColorRepository sockColorRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    private final Map<String, SockColor> byName = new ConcurrentHashMap<>();
+    private final Map<String, SockColor> byLowerName = new ConcurrentHashMap<>();
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                sockColorRepository.findAll().forEach(this::cache));
+        log.info("Loaded {} sock colors", byLowerName.size());
+    }
+
+    /**
+     * Цвет в написании словаря. Новый цвет добавляется в словарь в текущей транзакции или в отдельной,
+     * если транзакции нет, и попадает в кэш после коммита. До коммита цвет хранится в словаре транзакции,
+     * поэтому повторные строки с тем же цветом не обращаются к БД.
+     */
+    public String register(String color) {
+        if (color == null)
+            return null;
+        SockColor cached = lookup(color);
+        if (cached != null)
+            return cached.getName();
+
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            sockColorRepository.insertIfAbsent(color);
+            SockColor stored = sockColorRepository.findByNameIgnoreCase(color).orElseThrow();
+            if (TransactionSynchronizationManager.isSynchronizationActive())
+                pending(true).putIfAbsent(lowerCase(stored.getName()), stored);
+            else
+                cache(stored);
+            return stored.getName();
+        });
+    }
+
+    /**
+     * Цвет в написании словаря для поиска. Цвета нет в кэше - он ищется в БД (например, добавлен другим
+     * экземпляром). Неизвестный цвет возвращается как есть и в словарь не добавляется.
+     */
+    public String find(String color) {
+        if (color == null)
+            return null;
+        SockColor cached = lookup(color);
+        if (cached != null)
+            return cached.getName();
+
+        Optional<SockColor> stored = sockColorRepository.findByNameIgnoreCase(color);
+        stored.ifPresent(this::cache);
+        return stored.map(SockColor::getName).orElse(color);
+    }
+
+    private SockColor lookup(String color) {
+        SockColor cached = byName.get(color);
+        if (cached == null)
+            cached = byLowerName.get(lowerCase(color));
+        if (cached == null) {
+            Map<String, SockColor> pending = pending(false);
+            if (pending != null)
+                cached = pending.get(lowerCase(color));
+        }
+        return cached;
+    }
+
+    /**
+     * Цвета, добавленные в текущей транзакции: после коммита переносятся в кэш, после отката отбрасываются.
+     * Хранятся в синхронизации транзакции, поэтому вложенная REQUIRES_NEW транзакция их не видит.
+     */
+    private Map<String, SockColor> pending(boolean create) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return null;
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronization instanceof PendingColors pending)
+                return pending.colors;
+        }
+        if (!create)
+            return null;
+        PendingColors pending = new PendingColors();
+        TransactionSynchronizationManager.registerSynchronization(pending);
+        return pending.colors;
+    }
+
+    private class PendingColors implements TransactionSynchronization {
+
+        private final Map<String, SockColor> colors = new HashMap<>();
+
+        @Override
+        public void afterCommit() {
+            colors.values().forEach(ColorDictionary.this::cache);
+        }
+    }
+
+    private void cache(SockColor color) {
+        byName.putIfAbsent(color.getName(), color);
+        byLowerName.putIfAbsent(lowerCase(color.getName()), color);
+    }
+
+    private static String lowerCase(String color) {
+        return color.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,66 @@
+package org.example.sockstask.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Версия склада: увеличивается после коммита каждой записи, из нее и параметров запроса строится ETag.
+ * Слушатель выполняется последним, после перечитывания SockReadModel, чтобы новую версию не получил
+ * ответ со старыми данными. Версия живет в памяти экземпляра, эпоха отличает ETag после перезапуска.
+ * Записи через другие экземпляры и отставание реплики версию не меняют, поэтому в таких конфигурациях
+ * ETag выключается.
+ */
+@Component
+@RequiredArgsConstructor
+public class InventoryVersion {
+
+    private final SocksProperties socksProperties;
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final AtomicLong version = new AtomicLong();
+
+    public long current() {
+        return version.get();
+    }
+
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    @TransactionalEventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        version.incrementAndGet();
+    }
+
+    /**
+     * ETag текущей версии для запроса с параметрами parameters или null, если ETag выключен.
+     * Версию нужно брать до чтения данных: если запись закоммитится во время запроса, ответ получит
+     * старый ETag и будет перечитан при следующем опросе.
+     */
+    public String eTag(Object... parameters) {
+        if (!socksProperties.getEtag().isEnabled() || socksProperties.getReplica().isEnabled())
+            return null;
+        return "\"" + epoch + "-" + current() + "-" + canonical(parameters) + "\"";
+    }
+
+    /**
+     * Параметры через '&', каждый в URL-кодировке, null - '~': разные наборы параметров дают разные строки,
+     * и в строке нет символов, запрещенных в ETag.
+     */
+    private static String canonical(Object... parameters) {
+        return Arrays.stream(parameters)
+                .map(parameter -> parameter == null
+                        ? "~"
+                        : URLEncoder.encode(String.valueOf(parameter), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&"));
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.sockstask.cache;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.CottonBucket;
+import org.example.sockstask.dto.SocksFacetsResponse;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.repository.SockShardRepository;
+import org.example.sockstask.util.SockKey;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Суммарные остатки по цветам и корзинам процента хлопка. Загружаются при старте одним GROUP BY
+ * и дальше меняются на приращения из SocksChangedEvent, поэтому чтение стоит O(цветов + корзин).
+ * Приращения приходят только от записей этого экземпляра: записи других экземпляров видны после
+ * следующего пересчета, который раз в rebuild-interval перечитывает суммы из БД.
+ * Пересчет идет в основную БД (транзакция не readOnly), отстающая реплика дала бы неверную базу.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SockFacets {
+
+    private final SockRepository sockRepository;
+    private final SockShardRepository sockShardRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+
+    private volatile Totals current;
+    private volatile Totals rebuilding;
+    private final ReadWriteLock commitGate = new ReentrantReadWriteLock();
+    private ScheduledExecutorService rebuilder;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebuild();
+        rebuilder = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "sock-facets-rebuilder"));
+        long interval = socksProperties.getFacets().getRebuildInterval().toMillis();
+        rebuilder.scheduleWithFixedDelay(this::rebuild, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (rebuilder != null)
+            rebuilder.shutdownNow();
+    }
+
+    /**
+     * Приращения применяются после коммита. От beforeCommit до afterCompletion транзакция держит
+     * commitGate на чтение, а пересчет берет снимок БД под commitGate на запись: запись, закоммиченная
+     * до снимка, уже применена к текущей копии и входит в снимок, а закоммиченная после - применяется
+     * к обеим копиям. Так одна запись не считается в новой копии дважды. После bulk-события суммы
+     * пересчитываются целиком, уже без commitGate.
+     */
+    @EventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive())
+            return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            private boolean locked;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitGate.readLock().lock();
+                locked = true;
+            }
+
+            @Override
+            public void afterCommit() {
+                Totals totals = current;
+                if (totals != null)
+                    totals.apply(event.deltas());
+                Totals next = rebuilding;
+                if (next != null)
+                    next.apply(event.deltas());
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (locked)
+                    commitGate.readLock().unlock();
+                if (event.bulk() && status == STATUS_COMMITTED)
+                    rebuild();
+            }
+        });
+    }
+
+    public SocksFacetsResponse get() {
+        if (current == null)
+            rebuild();
+        Totals totals = current;
+        if (totals == null)
+            throw new IllegalStateException("Sock facets are not loaded");
+        Map<String, Long> byColor = new TreeMap<>();
+        totals.byColor.forEach((color, quantity) -> {
+            long sum = quantity.sum();
+            if (sum != 0)
+                byColor.put(color, sum);
+        });
+
+        List<CottonBucket> byBucket = new ArrayList<>(totals.byBucket.length);
+        for (int i = 0; i < totals.byBucket.length; i++) {
+            byBucket.add(new CottonBucket(i * totals.bucketWidth, Math.min((i + 1) * totals.bucketWidth, 100),
+                    totals.byBucket[i].sum()));
+        }
+        return SocksFacetsResponse.builder()
+                .quantityByColor(byColor)
+                .quantityByCottonPercentage(byBucket)
+                .build();
+    }
+
+    private synchronized void rebuild() {
+        int bucketWidth = socksProperties.getFacets().getBucketWidth();
+        Totals next = new Totals(bucketWidth);
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+            transaction.executeWithoutResult(status -> {
+                commitGate.writeLock().lock();
+                try {
+                    // первый запрос транзакции REPEATABLE READ фиксирует снимок, дальше GROUP BY читает его
+                    sockRepository.existsById(0L);
+                    rebuilding = next;
+                } finally {
+                    commitGate.writeLock().unlock();
+                }
+                List<Object[]> rows = new ArrayList<>(sockRepository.sumByColorAndBucket(bucketWidth));
+                if (sockRepository.hasShards())
+                    rows.addAll(sockShardRepository.sumByColorAndBucket(bucketWidth));
+                rows.forEach(row ->
+                        next.add((String) row[0], ((Number) row[1]).intValue(), ((Number) row[2]).longValue()));
+            });
+            current = next;
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild sock facets", e);
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    private static class Totals {
+
+        private final int bucketWidth;
+        private final Map<String, LongAdder> byColor = new ConcurrentHashMap<>();
+        private final LongAdder[] byBucket;
+
+        private Totals(int bucketWidth) {
+            this.bucketWidth = bucketWidth;
+            byBucket = new LongAdder[(100 + bucketWidth - 1) / bucketWidth];
+            for (int i = 0; i < byBucket.length; i++) {
+                byBucket[i] = new LongAdder();
+            }
+        }
+
+        private void apply(Map<SockKey, Integer> deltas) {
+            deltas.forEach((key, delta) -> add(key.color(), bucket(key.cottonPercentage()), delta));
+        }
+
+        private void add(String color, int bucket, long quantity) {
+            byColor.computeIfAbsent(color, c -> new LongAdder()).add(quantity);
+            byBucket[Math.max(0, Math.min(bucket, byBucket.length - 1))].add(quantity);
+        }
+
+        /**
+         * Так же, как floor(cotton_percentage / bucketWidth) в БД: float переводится в double без потерь.
+         */
+        private int bucket(float cottonPercentage) {
+            return (int) Math.floor(cottonPercentage / (double) bucketWidth);
+        }
+    }
+}
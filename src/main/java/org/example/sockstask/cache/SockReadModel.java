@@ -0,0 +1,246 @@
+package org.example.sockstask.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.PageCursor;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Копия таблицы sock в памяти для чтения с фильтрами без запросов к БД.
+ * Индексы: по цвету (процент хлопка уникален внутри цвета), общий по проценту хлопка и id
+ * и по позиции. Цвета приходят из {@link ColorDictionary} одним экземпляром строки, поэтому
+ * сравнение ключей позиции обычно сводится к сравнению ссылок.
+ * Загружается при старте, после коммита каждой записи затронутые позиции перечитываются из БД.
+ * Цвета сравниваются по кодам символов, как ORDER BY ... COLLATE ucs_basic в SockRepoImpl.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SockReadModel {
+
+    private final SockRepository sockRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object reloadLock = new Object();
+    private final Set<SockKey> pendingKeys = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready;
+
+    private Map<Long, Sock> byId = new HashMap<>();
+    private Map<SockKey, Sock> bySku = new HashMap<>();
+    private Map<String, NavigableMap<Float, Sock>> byColor = new HashMap<>();
+    private NavigableMap<Float, NavigableMap<Long, Sock>> byCottonPercentage = new TreeMap<>();
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!socksProperties.getReadModel().isEnabled())
+            return;
+
+        synchronized (reloadLock) {
+            List<Sock> socks = reloadTransaction().execute(status -> sockRepository.findAll());
+            lock.writeLock().lock();
+            try {
+                byId = new HashMap<>();
+                bySku = new HashMap<>();
+                byColor = new HashMap<>();
+                byCottonPercentage = new TreeMap<>();
+                socks.forEach(this::put);
+                ready = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Read model loaded with {} socks", socks.size());
+        }
+        reload(drainPending());
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!socksProperties.getReadModel().isEnabled())
+            return;
+
+        if (event.bulk()) {
+            load();
+            return;
+        }
+        if (!ready) {
+            pendingKeys.addAll(event.deltas().keySet());
+            if (!ready)
+                return;
+        }
+        reload(event.deltas().keySet());
+    }
+
+    public List<Sock> findAllWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                                         PageCursor after, Integer limit) {
+        List<Sock> socks = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (filter.color() != null) {
+                NavigableMap<Float, Sock> colorSocks = byColor.get(filter.color());
+                if (colorSocks != null)
+                    socks.addAll(filterByCottonPercentage(colorSocks, filter).values());
+            } else {
+                filterByCottonPercentage(byCottonPercentage, filter).values().forEach(s -> socks.addAll(s.values()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Comparator<Sock> comparator = comparator(fieldForSort, asc);
+        if (fieldForSort != FieldForSort.COTTON_PERCENTAGE || !asc)
+            socks.sort(comparator);
+
+        Sock cursor = after == null ? null : cursorSock(after);
+        List<Sock> page = new ArrayList<>();
+        for (Sock sock : socks) {
+            if (limit != null && page.size() == limit)
+                break;
+            if (cursor == null || comparator.compare(sock, cursor) > 0)
+                page.add(sock);
+        }
+        return page;
+    }
+
+    private <V> NavigableMap<Float, V> filterByCottonPercentage(NavigableMap<Float, V> socks, SockFilter filter) {
+        List<Float> cottonPercentage = filter.cottonPercentage();
+        if (cottonPercentage == null)
+            return socks;
+        float value = cottonPercentage.get(0);
+        return switch (filter.comparison()) {
+            case moreThan -> socks.tailMap(value, false);
+            case lessThan -> socks.headMap(value, false);
+            case equal -> socks.subMap(value, true, value, true);
+            case between -> socks.subMap(value, true, cottonPercentage.get(1), true);
+        };
+    }
+
+    private Comparator<Sock> comparator(FieldForSort fieldForSort, boolean asc) {
+        Comparator<Sock> comparator = switch (fieldForSort) {
+            case COLOR -> Comparator.comparing(Sock::getColor, SockReadModel::compareCodePoints)
+                    .thenComparing(Sock::getId);
+            case COTTON_PERCENTAGE -> Comparator.comparing(Sock::getCottonPercentage).thenComparing(Sock::getId);
+            case NOTHING -> Comparator.comparing(Sock::getId);
+        };
+        return asc ? comparator : comparator.reversed();
+    }
+
+    /**
+     * String.compareTo сравнивает UTF-16, и символы вне BMP оказываются раньше U+E000..U+FFFF, а в ucs_basic позже.
+     */
+    private static int compareCodePoints(String color, String other) {
+        int i = 0;
+        int j = 0;
+        while (i < color.length() && j < other.length()) {
+            int c = color.codePointAt(i);
+            int d = other.codePointAt(j);
+            if (c != d)
+                return Integer.compare(c, d);
+            i += Character.charCount(c);
+            j += Character.charCount(d);
+        }
+        return Integer.compare(color.length() - i, other.length() - j);
+    }
+
+    private Sock cursorSock(PageCursor after) {
+        Sock sock = new Sock();
+        sock.setId(after.id());
+        switch (after.fieldForSort()) {
+            case COLOR -> sock.setColor(after.key());
+            case COTTON_PERCENTAGE -> sock.setCottonPercentage(after.cottonPercentage());
+        }
+        return sock;
+    }
+
+    private void reload(Collection<SockKey> keys) {
+        if (keys.isEmpty())
+            return;
+
+        synchronized (reloadLock) {
+            List<Sock> socks = reloadTransaction().execute(status -> sockRepository.findAllByKeys(keys));
+            lock.writeLock().lock();
+            try {
+                keys.forEach(key -> remove(bySku.get(key)));
+                socks.forEach(this::put);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private Set<SockKey> drainPending() {
+        Set<SockKey> keys = new HashSet<>(pendingKeys);
+        pendingKeys.removeAll(keys);
+        return keys;
+    }
+
+    private void put(Sock source) {
+        Sock sock = new Sock(source.getId(), source.getColor(), source.getCottonPercentage(),
+                source.getTotalQuantity());
+        SockKey sku = sku(sock);
+        remove(bySku.get(sku));
+        remove(byId.get(sock.getId()));
+
+        byId.put(sock.getId(), sock);
+        bySku.put(sku, sock);
+        byColor.computeIfAbsent(sock.getColor(), c -> new TreeMap<>()).put(sock.getCottonPercentage(), sock);
+        byCottonPercentage.computeIfAbsent(sock.getCottonPercentage(), c -> new TreeMap<>()).put(sock.getId(), sock);
+    }
+
+    private void remove(Sock sock) {
+        if (sock == null)
+            return;
+
+        byId.remove(sock.getId());
+        bySku.remove(sku(sock));
+
+        NavigableMap<Float, Sock> colorSocks = byColor.get(sock.getColor());
+        colorSocks.remove(sock.getCottonPercentage());
+        if (colorSocks.isEmpty())
+            byColor.remove(sock.getColor());
+
+        NavigableMap<Long, Sock> cottonSocks = byCottonPercentage.get(sock.getCottonPercentage());
+        cottonSocks.remove(sock.getId());
+        if (cottonSocks.isEmpty())
+            byCottonPercentage.remove(sock.getCottonPercentage());
+    }
+
+    private static SockKey sku(Sock sock) {
+        return new SockKey(sock.getColor(), sock.getCottonPercentage());
+    }
+
+    /**
+     * Не readOnly: перечитывание сразу после коммита должно идти в основную БД, а не в отстающую реплику.
+     */
+    private TransactionTemplate reloadTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaction;
+    }
+}
@@ -0,0 +1,109 @@
+package org.example.sockstask.config;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Лимит одновременных запросов, подстраиваемый по AIMD: пока запросы быстрые и лимит используется
+ * хотя бы наполовину, он растет на 1/limit за запрос (примерно +1 за каждые limit запросов), а каждый
+ * медленный или неудачный запрос умножает его на backoff-ratio. Сверх лимита до queue-capacity запросов
+ * ждут в порядке прихода не дольше queue-timeout, остальные отклоняются сразу. Без очереди (queueing = false)
+ * отклоняются все запросы сверх лимита.
+ * ReentrantLock, а не synchronized, чтобы ожидание не закрепляло виртуальный поток за платформенным.
+ */
+class AdaptiveLimiter {
+
+    private final SocksProperties.Concurrency.Limit properties;
+    private final boolean queueing;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition released = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    AdaptiveLimiter(SocksProperties.Concurrency.Limit properties) {
+        this(properties, true);
+    }
+
+    AdaptiveLimiter(SocksProperties.Concurrency.Limit properties, boolean queueing) {
+        this.properties = properties;
+        this.queueing = queueing;
+        this.limit = Math.max(properties.getMinLimit(), Math.min(properties.getInitialLimit(), properties.getMaxLimit()));
+    }
+
+    boolean tryAcquire() throws InterruptedException {
+        lock.lock();
+        try {
+            if (waiting == 0 && inFlight < currentLimit()) {
+                inFlight++;
+                return true;
+            }
+            if (!queueing || waiting >= properties.getQueueCapacity())
+                return false;
+
+            waiting++;
+            try {
+                long nanos = properties.getQueueTimeout().toNanos();
+                while (inFlight >= currentLimit()) {
+                    if (nanos <= 0)
+                        return false;
+                    nanos = released.awaitNanos(nanos);
+                }
+                inFlight++;
+                return true;
+            } finally {
+                waiting--;
+                if (inFlight < currentLimit())
+                    released.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param failed запрос завершился ошибкой сервера
+     */
+    void release(long latencyNanos, boolean failed) {
+        lock.lock();
+        try {
+            int used = inFlight--;
+            if (failed || latencyNanos > properties.getLatencyThreshold().toNanos()) {
+                limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+            } else if (used * 2 >= limit) {
+                limit = Math.min(properties.getMaxLimit(), limit + 1 / limit);
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место, не меняя лимит: время запроса не говорит о нагрузке на сервер.
+     */
+    void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int currentLimit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Через сколько секунд отклоненному запросу стоит повторить: не раньше, чем мог бы дождаться в очереди.
+     */
+    long retryAfterSeconds() {
+        return Math.max(1, properties.getQueueTimeout().toSeconds());
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.sockstask.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Ограничивает число одновременно обрабатываемых запросов к /api отдельно для чтений, записей и тяжелых
+ * загрузок/выгрузок, чтобы загрузка партии не забирала соединения у прихода и отпуска. Лимиты подстраиваются
+ * по задержке ({@link AdaptiveLimiter}), запросы сверх лимита и очереди сразу получают 503 с Retry-After.
+ * На виртуальных потоках Tomcat принимает сколько угодно запросов, и без этого они копятся
+ * в очереди Hikari до connection-timeout.
+ * Асинхронный ответ (/stream, /export) держит место до своего завершения, но лимит по нему не меняется:
+ * его время включает скачивание клиентом. На платформенных потоках загрузки и выгрузки сверх лимита
+ * отклоняются сразу, а не ждут в очереди, занимая поток Tomcat. Поток /changes не ограничивается:
+ * он открыт долго и соединений к БД не держит.
+ */
+@Component
+@ConditionalOnProperty(prefix = "socks.concurrency", name = "enabled", havingValue = "true")
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    enum Group {
+        READS, WRITES, BULK
+    }
+
+    private final Map<Group, AdaptiveLimiter> limiters = new EnumMap<>(Group.class);
+    private final Map<Group, Counter> rejected = new EnumMap<>(Group.class);
+
+    public ConcurrencyLimitFilter(SocksProperties socksProperties, MeterRegistry meterRegistry,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        SocksProperties.Concurrency properties = socksProperties.getConcurrency();
+        limiters.put(Group.READS, new AdaptiveLimiter(properties.getReads()));
+        limiters.put(Group.WRITES, new AdaptiveLimiter(properties.getWrites()));
+        limiters.put(Group.BULK, new AdaptiveLimiter(properties.getBulk(), virtualThreads));
+
+        limiters.forEach((group, limiter) -> {
+            String tag = group.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("socks.concurrency.limit", limiter, AdaptiveLimiter::currentLimit)
+                    .description("Текущий лимит одновременных запросов")
+                    .tag("group", tag)
+                    .register(meterRegistry);
+            Gauge.builder("socks.concurrency.in.flight", limiter, AdaptiveLimiter::inFlight)
+                    .description("Запросов в обработке")
+                    .tag("group", tag)
+                    .register(meterRegistry);
+            rejected.put(group, Counter.builder("socks.concurrency.rejected")
+                    .description("Запросов, отклоненных с 503")
+                    .tag("group", tag)
+                    .register(meterRegistry));
+        });
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        return !uri.startsWith("/api/") || uri.equals("/api/socks/changes");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Group group = group(request);
+        AdaptiveLimiter limiter = limiters.get(group);
+        boolean acquired;
+        try {
+            acquired = limiter.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+
+        if (!acquired) {
+            rejected.get(group).increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(limiter.retryAfterSeconds()));
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many concurrent requests");
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean completed = false;
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(limiter));
+                async = true;
+            }
+        } finally {
+            if (!async)
+                limiter.release(System.nanoTime() - start, !completed || response.getStatus() >= 500);
+        }
+    }
+
+    private static Group group(HttpServletRequest request) {
+        String uri = request.getRequestURI();
+        String method = request.getMethod();
+        if (HttpMethod.POST.matches(method) && uri.equals("/api/socks/batch"))
+            return Group.BULK;
+        if (HttpMethod.GET.matches(method))
+            return uri.equals("/api/socks/stream") || uri.equals("/api/socks/export") ? Group.BULK : Group.READS;
+        return Group.WRITES;
+    }
+
+    private record ReleaseListener(AdaptiveLimiter limiter) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            limiter.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.example.sockstask.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Транзакции readOnly = true идут на реплику, если ее можно использовать, остальные - на основную БД.
+ * Работает только за LazyConnectionDataSourceProxy: соединение должно браться при первом запросе,
+ * когда признак readOnly транзакции уже выставлен.
+ */
+@RequiredArgsConstructor
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    enum Target {
+        PRIMARY, REPLICA
+    }
+
+    private final ReplicaLagMonitor replicaLagMonitor;
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && replicaLagMonitor.isUsable(ReadYourWritesFilter.lastWrite()))
+            return Target.REPLICA;
+        return Target.PRIMARY;
+    }
+}
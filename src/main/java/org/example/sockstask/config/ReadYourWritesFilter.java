@@ -0,0 +1,57 @@
+package org.example.sockstask.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Запоминает в HTTP-сессии время последней записи, чтобы следующие чтения этой сессии не шли
+ * на реплику, которая эту запись еще не получила. Сессия создается на первом изменяющем запросе.
+ * На время запроса отметка копируется в атрибут запроса, а не в ThreadLocal: тело /stream и /export
+ * пишется в потоке асинхронной обработки, куда Spring MVC переносит запрос через RequestContextHolder.
+ */
+@Component
+@ConditionalOnProperty(prefix = "socks.replica", name = {"enabled", "read-your-writes"}, havingValue = "true")
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    private static final String LAST_WRITE = ReadYourWritesFilter.class.getName() + ".LAST_WRITE";
+    static Instant lastWrite() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes == null
+                ? null
+                : (Instant) attributes.getAttribute(LAST_WRITE, RequestAttributes.SCOPE_REQUEST);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HttpMethod method = HttpMethod.valueOf(request.getMethod());
+        boolean write = method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS;
+        HttpSession session = request.getSession(write);
+        if (session != null)
+            request.setAttribute(LAST_WRITE, session.getAttribute(LAST_WRITE));
+
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            if (write)
+                session.setAttribute(LAST_WRITE, Instant.now());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.example.sockstask.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отставание реплики по WAL. Раз в check-interval запоминает текущий LSN основной БД и находит самую
+ * позднюю такую отметку, которую реплика уже воспроизвела: все, что закоммичено до этого момента,
+ * на реплике видно. Если БД чтения не реплика (pg_last_wal_replay_lsn() = null), считается, что она не отстает.
+ */
+@Slf4j
+public class ReplicaLagMonitor {
+
+    private static final int MAX_CHECKPOINTS = 10_000;
+
+    private final JdbcTemplate primary;
+    private final JdbcTemplate replica;
+    private final SocksProperties.Replica properties;
+    private final MeterRegistry meterRegistry;
+
+    private final Deque<Checkpoint> checkpoints = new ArrayDeque<>();
+    private volatile Instant caughtUpTo;
+    private volatile boolean replicaUp;
+    private ScheduledExecutorService checker;
+
+    public ReplicaLagMonitor(DataSource primary, DataSource replica, SocksProperties.Replica properties,
+                             MeterRegistry meterRegistry) {
+        this.primary = new JdbcTemplate(primary);
+        this.replica = new JdbcTemplate(replica);
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        meterRegistry.gauge("socks.replica.lag", this, monitor -> monitor.lag().toMillis() / 1000.0);
+        checker = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "replica-lag-monitor"));
+        long interval = properties.getCheckInterval().toMillis();
+        checker.scheduleWithFixedDelay(this::check, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        checker.shutdownNow();
+    }
+
+    /**
+     * @param lastWrite время последней записи сессии или null
+     * @return можно ли читать с реплики: она доступна, отстает не больше max-lag и уже видит lastWrite
+     */
+    public boolean isUsable(Instant lastWrite) {
+        Instant caught = caughtUpTo;
+        if (!replicaUp || caught == null)
+            return false;
+        if (lag().compareTo(properties.getMaxLag()) > 0)
+            return false;
+        return lastWrite == null || caught.isAfter(lastWrite);
+    }
+
+    private Duration lag() {
+        Instant caught = caughtUpTo;
+        return caught == null ? Duration.ZERO : Duration.between(caught, Instant.now());
+    }
+
+    synchronized void check() {
+        Instant now = Instant.now();
+        try {
+            checkpoints.addLast(new Checkpoint(now, lsn(
+                    primary.queryForObject("SELECT pg_current_wal_lsn()::text", String.class))));
+            if (checkpoints.size() > MAX_CHECKPOINTS)
+                checkpoints.removeFirst();
+        } catch (DataAccessException e) {
+            log.warn("Failed to read primary WAL position: {}", e.getMessage());
+        }
+
+        try {
+            String replayed = replica.queryForObject("SELECT pg_last_wal_replay_lsn()::text", String.class);
+            if (replayed == null) {
+                checkpoints.clear();
+                caughtUpTo = now;
+            } else {
+                long replayedLsn = lsn(replayed);
+                Checkpoint latest = null;
+                while (!checkpoints.isEmpty() && checkpoints.peekFirst().lsn() <= replayedLsn) {
+                    latest = checkpoints.removeFirst();
+                }
+                if (latest != null)
+                    caughtUpTo = latest.at();
+            }
+            replicaUp = true;
+        } catch (DataAccessException e) {
+            if (replicaUp)
+                log.warn("Replica is unavailable, reading from primary: {}", e.getMessage());
+            replicaUp = false;
+        }
+    }
+
+    private static long lsn(String lsn) {
+        int slash = lsn.indexOf('/');
+        return (Long.parseLong(lsn.substring(0, slash), 16) << 32) | Long.parseLong(lsn.substring(slash + 1), 16);
+    }
+
+    private record Checkpoint(Instant at, long lsn) {
+    }
+}
@@ -0,0 +1,431 @@
+package org.example.sockstask.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.validator.constraints.time.DurationMin;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter @Setter
+@Validated
+@ConfigurationProperties(prefix = "socks")
+public class SocksProperties {
+
+    @Valid
+    private final Batch batch = new Batch();
+
+    @Valid
+    private final Stream stream = new Stream();
+
+    @Valid
+    private final Pagination pagination = new Pagination();
+
+    private final ReadModel readModel = new ReadModel();
+
+    @Valid
+    private final Coalescing coalescing = new Coalescing();
+
+    @Valid
+    private final Concurrency concurrency = new Concurrency();
+
+    @Valid
+    private final ImportJobs importJobs = new ImportJobs();
+
+    @Valid
+    private final Idempotency idempotency = new Idempotency();
+
+    @Valid
+    private final Ledger ledger = new Ledger();
+
+    @Valid
+    private final Sharding sharding = new Sharding();
+
+    @Valid
+    private final Replica replica = new Replica();
+
+    @Valid
+    private final Facets facets = new Facets();
+
+    @Valid
+    private final Changes changes = new Changes();
+
+    @Valid
+    private final QueryCache queryCache = new QueryCache();
+
+    private final Etag etag = new Etag();
+
+    @Getter @Setter
+    public static class Batch {
+
+        /**
+         * Количество уникальных строк файла, отправляемых в БД одним upsert-запросом.
+         * Postgres ограничивает запрос 65535 параметрами (по 3 на строку).
+         */
+        @Positive
+        @Max(20000)
+        private int chunkSize = 1000;
+    }
+
+    @Getter @Setter
+    public static class Stream {
+
+        /**
+         * Количество строк, которое JDBC-драйвер забирает из серверного курсора за один раз.
+         */
+        @Positive
+        private int fetchSize = 500;
+    }
+
+    @Getter @Setter
+    public static class Pagination {
+
+        /**
+         * Наибольший limit для GET /api/socks. Больше записей за раз - через /stream или /export.
+         */
+        @Positive
+        private int maxLimit = 1000;
+    }
+
+    @Getter @Setter
+    public static class ReadModel {
+
+        /**
+         * Отвечать на запросы с фильтрами из копии таблицы в памяти вместо запросов к БД.
+         */
+        private boolean enabled = false;
+    }
+
+    @Getter @Setter
+    public static class Coalescing {
+
+        /**
+         * Копить приход в памяти и записывать суммарные изменения пачкой вместо транзакции на каждый запрос.
+         */
+        private boolean enabled = false;
+
+        @DurationMin(millis = 1)
+        private Duration flushInterval = Duration.ofMillis(50);
+
+        /**
+         * Внеочередная запись, как только накопилось столько запросов.
+         */
+        @Positive
+        private int maxEvents = 1000;
+
+        /**
+         * Отвечать клиенту только после того, как его приход записан в БД.
+         * При replica.read-your-writes включается всегда.
+         */
+        private boolean awaitFlush = false;
+
+        private Duration awaitTimeout = Duration.ofSeconds(5);
+    }
+
+    @Getter @Setter
+    public static class Concurrency {
+
+        /**
+         * Ограничить число одновременно обрабатываемых запросов к /api, чтобы виртуальные потоки
+         * не выстраивались в очередь за соединениями к БД, а загрузки не занимали все потоки Tomcat.
+         */
+        private boolean enabled = true;
+
+        /**
+         * GET-запросы, кроме выгрузок.
+         */
+        @Valid
+        private final Limit reads = Limit.of(32, 4, 128, Duration.ofMillis(200), 64, Duration.ofMillis(50));
+
+        /**
+         * Приход, отпуск, пакетные движения и обновление позиции.
+         */
+        @Valid
+        private final Limit writes = Limit.of(16, 2, 64, Duration.ofMillis(200), 64, Duration.ofMillis(50));
+
+        /**
+         * Загрузка партий и выгрузки /stream и /export: низкий приоритет. Ждут в очереди только
+         * на виртуальных потоках, на платформенных сверх лимита сразу получают 503.
+         */
+        @Valid
+        private final Limit bulk = Limit.of(2, 1, 4, Duration.ofMinutes(1), 4, Duration.ofSeconds(1));
+
+        @Getter @Setter
+        public static class Limit {
+
+            /**
+             * Лимит при старте. Дальше он растет на 1/limit за каждый быстрый запрос, пока занято больше
+             * половины лимита, и умножается на backoff-ratio за каждый медленный или завершившийся ошибкой 5xx.
+             */
+            @Positive
+            private int initialLimit;
+
+            @Positive
+            private int minLimit;
+
+            @Positive
+            private int maxLimit;
+
+            /**
+             * Запрос дольше этого считается признаком перегрузки.
+             */
+            @DurationMin(millis = 1)
+            private Duration latencyThreshold;
+
+            @DecimalMin("0.1") @DecimalMax(value = "1.0", inclusive = false)
+            private double backoffRatio = 0.9;
+
+            /**
+             * Сколько запросов может ждать свободного места. Остальные сразу получают 503.
+             */
+            @PositiveOrZero
+            private int queueCapacity;
+
+            /**
+             * Сколько запрос ждет в очереди, прежде чем получить 503.
+             */
+            private Duration queueTimeout;
+
+            private static Limit of(int initialLimit, int minLimit, int maxLimit, Duration latencyThreshold,
+                                    int queueCapacity, Duration queueTimeout) {
+                Limit limit = new Limit();
+                limit.initialLimit = initialLimit;
+                limit.minLimit = minLimit;
+                limit.maxLimit = maxLimit;
+                limit.latencyThreshold = latencyThreshold;
+                limit.queueCapacity = queueCapacity;
+                limit.queueTimeout = queueTimeout;
+                return limit;
+            }
+        }
+    }
+
+    @Getter @Setter
+    public static class ImportJobs {
+
+        /**
+         * Сколько файлов загружается одновременно. Каждая задача держит одно соединение к БД на время записи части.
+         */
+        @Positive
+        private int maxConcurrentJobs = 2;
+
+        /**
+         * Сколько задач может ждать своей очереди, остальные получают 429.
+         */
+        @PositiveOrZero
+        private int queueCapacity = 8;
+
+        /**
+         * Сколько хранится состояние завершенной задачи.
+         */
+        private Duration retention = Duration.ofHours(1);
+    }
+
+    @Getter @Setter
+    public static class Idempotency {
+
+        /**
+         * Сколько последних ключей держать в памяти, чтобы повтор не обращался к БД.
+         */
+        @Positive
+        private long cacheSize = 100_000;
+
+        /**
+         * Сколько ключ хранится в памяти и в таблице idempotency_key. Повтор после этого срока выполнится заново.
+         */
+        @DurationMin(minutes = 1)
+        private Duration ttl = Duration.ofHours(24);
+
+        @DurationMin(seconds = 1)
+        private Duration purgeInterval = Duration.ofMinutes(10);
+    }
+
+    @Getter @Setter
+    public static class Ledger {
+
+        /**
+         * Приход только дописывается в журнал sock_movement без блокировки строки sock, а в остаток
+         * его переносит фоновое сжатие. Отпуск и изменения позиции сначала сворачивают ее движения,
+         * список, сумма, выгрузка и фасеты - отложенные приходы этого экземпляра, а /stock считает их сам.
+         * Приходы через другие экземпляры и события /changes видны только после сжатия, до compaction-interval.
+         */
+        private boolean deferredIncome = false;
+
+        @DurationMin(millis = 10)
+        private Duration compactionInterval = Duration.ofSeconds(1);
+
+        /**
+         * Сколько движений сворачивается одной транзакцией.
+         */
+        @Positive
+        private int compactionBatchSize = 10_000;
+
+        /**
+         * Сколько хранятся отдельные свернутые движения. Старшие сворачиваются в одну строку на позицию,
+         * и остаток на момент раньше этого срока через /stock?at= уже не получить.
+         */
+        @DurationMin(hours = 1)
+        private Duration retention = Duration.ofDays(30);
+
+        @DurationMin(seconds = 1)
+        private Duration purgeInterval = Duration.ofHours(1);
+    }
+
+    @Getter @Setter
+    public static class Sharding {
+
+        /**
+         * Разбивать позицию на auto-shards частей, когда столько запросов одновременно ждут ее строку.
+         * 0 - не разбивать автоматически.
+         */
+        @PositiveOrZero
+        private int autoPromoteConcurrency = 0;
+
+        @Min(2)
+        private int autoShards = 8;
+
+        /**
+         * Позиции, разбиваемые на части при старте.
+         */
+        @Valid
+        private List<Sku> skus = new ArrayList<>();
+
+        @Getter @Setter
+        public static class Sku {
+
+            @NotNull
+            private String color;
+
+            private float cottonPercentage;
+
+            @Min(2)
+            private int shards;
+        }
+    }
+
+    @Getter @Setter
+    public static class Replica {
+
+        /**
+         * Выполнять транзакции только для чтения на реплике, записи - на основной БД.
+         */
+        private boolean enabled = false;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        @Positive
+        private int maximumPoolSize = 10;
+
+        /**
+         * Если реплика отстала сильнее, чтение идет в основную БД.
+         */
+        private Duration maxLag = Duration.ofSeconds(5);
+
+        @DurationMin(millis = 10)
+        private Duration checkInterval = Duration.ofSeconds(1);
+
+        /**
+         * После записи чтение в той же HTTP-сессии идет в основную БД, пока реплика не догонит эту запись.
+         */
+        private boolean readYourWrites = false;
+    }
+
+    @Getter @Setter
+    public static class Facets {
+
+        /**
+         * Ширина корзины по проценту хлопка: 10 - корзины [0, 10), [10, 20), ..., [90, 100].
+         */
+        @Min(1) @Max(100)
+        private int bucketWidth = 10;
+
+        /**
+         * Как часто суммы пересчитываются из БД, чтобы исправить возможное расхождение.
+         */
+        @DurationMin(seconds = 1)
+        private Duration rebuildInterval = Duration.ofMinutes(10);
+    }
+
+    @Getter @Setter
+    public static class Changes {
+
+        /**
+         * Сколько событий ждет отправки одному подписчику. Если подписчик не успевает и очередь
+         * заполнена, соединение закрывается, клиент переподключается с Last-Event-ID.
+         */
+        @Positive
+        private int bufferSize = 256;
+
+        /**
+         * Сколько подписчиков обслуживается одновременно: у каждого свой поток отправки.
+         * Остальные получают 503 и переподключаются позже.
+         */
+        @Positive
+        private int maxSubscribers = 200;
+
+        /**
+         * Сколько последних событий хранится для продолжения с Last-Event-ID.
+         */
+        @Positive
+        private int replaySize = 10_000;
+
+        /**
+         * Время жизни одного соединения, после него клиент переподключается.
+         */
+        @DurationMin(seconds = 1)
+        private Duration timeout = Duration.ofMinutes(30);
+
+        /**
+         * Как часто отправлять комментарий в пустой поток, чтобы прокси не закрывали соединение.
+         */
+        @DurationMin(seconds = 1)
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+    }
+
+    @Getter @Setter
+    public static class QueryCache {
+
+        /**
+         * Кэшировать результаты запросов с фильтрами до следующей записи. Версия склада считается в памяти
+         * экземпляра, поэтому включать только для одного экземпляра на БД. При включенной реплике не используется.
+         */
+        private boolean enabled = false;
+
+        @Positive
+        private long maximumSize = 1000;
+
+        /**
+         * Версия склада считается в памяти экземпляра, и записи через другие экземпляры ее не меняют.
+         * Поэтому результат живет не дольше этого времени.
+         */
+        @DurationMin(seconds = 1)
+        private Duration expireAfterWrite = Duration.ofSeconds(30);
+    }
+
+    @Getter @Setter
+    public static class Etag {
+
+        /**
+         * Отвечать 304 на GET /api/socks с If-None-Match, пока склад не менялся. Версия склада считается
+         * в памяти экземпляра и не видит записи других экземпляров, поэтому включать только для единственного
+         * экземпляра на БД: за балансировщиком клиент получил бы 304 на устаревшие данные.
+         * При включенной реплике не используется.
+         */
+        private boolean enabled = false;
+    }
+}
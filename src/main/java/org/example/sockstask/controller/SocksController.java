@@ -4,16 +4,35 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.example.sockstask.cache.InventoryVersion;
+import org.example.sockstask.dto.ImportJobStatus;
+import org.example.sockstask.dto.MovementDto;
+import org.example.sockstask.dto.MovementsResponse;
 import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksFacetsResponse;
 import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.dto.SocksTotalResponse;
+import org.example.sockstask.service.IdempotencyService;
+import org.example.sockstask.service.ImportJobService;
 import org.example.sockstask.service.SockService;
 import org.example.sockstask.util.Comparison;
 import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.IdempotentResult;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/socks")
@@ -21,31 +40,122 @@ import java.util.List;
 @Tag(name = "socks-service", description = "API для учета носков на складе магазина")
 public class SocksController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+    private static final MediaType TEXT_CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
     private final SockService sockService;
+    private final ImportJobService importJobService;
+    private final IdempotencyService idempotencyService;
+    private final InventoryVersion inventoryVersion;
 
     @GetMapping
     @Operation(summary = "Получение общего количества носков с фильтрацией")
     public SocksResponse getSocksWithFilter(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false, defaultValue = "equal") Comparison comparison,
+            @RequestParam(required = false) List<Float> cottonPercentage,
+            @RequestParam(required = false, defaultValue = "NOTHING") FieldForSort fieldForSort,
+            @RequestParam(required = false, defaultValue = "true") boolean asc,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor,
+            WebRequest webRequest) {
+        String eTag = inventoryVersion.eTag(color, comparison, cottonPercentage, fieldForSort, asc, limit, cursor,
+                webRequest.getHeader(HttpHeaders.ACCEPT));
+        if (eTag != null && webRequest.checkNotModified(eTag))
+            return null;
+        return sockService.getAllWithFilters(color, comparison, cottonPercentage, fieldForSort, asc, limit, cursor);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Потоковая выгрузка носков с фильтрацией в формате NDJSON")
+    public ResponseEntity<StreamingResponseBody> streamSocksWithFilter(
             @RequestParam(required = false) String color,
             @RequestParam(required = false, defaultValue = "equal") Comparison comparison,
             @RequestParam(required = false) List<Float> cottonPercentage,
             @RequestParam(required = false, defaultValue = "NOTHING") FieldForSort fieldForSort,
             @RequestParam(required = false, defaultValue = "true") boolean asc) {
-        return sockService.getAllWithFilters(color, comparison, cottonPercentage, fieldForSort, asc);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(sockService.streamAllWithFilters(color, comparison, cottonPercentage, fieldForSort, asc));
+    }
+
+    @GetMapping(value = "/export", produces = "text/csv")
+    @Operation(summary = "Выгрузка носков с фильтрацией в CSV",
+            description = "Колонки color, cottonPercentage, quantity - в том же виде, что принимает /batch")
+    public ResponseEntity<StreamingResponseBody> exportSocks(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false, defaultValue = "equal") Comparison comparison,
+            @RequestParam(required = false) List<Float> cottonPercentage) {
+        return ResponseEntity.ok()
+                .contentType(TEXT_CSV)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename("socks.csv")
+                        .build()
+                        .toString())
+                .body(sockService.exportCsv(color, comparison, cottonPercentage));
+    }
+
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Поток изменений остатков (SSE) с фильтрацией",
+            description = "После каждой записи - событие change с позицией, изменением и новым остатком. "
+                    + "С заголовком Last-Event-ID поток продолжается с пропущенных событий; "
+                    + "если их уже нет, первым приходит событие reset")
+    public SseEmitter subscribeChanges(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false, defaultValue = "equal") Comparison comparison,
+            @RequestParam(required = false) List<Float> cottonPercentage,
+            @RequestHeader(name = LAST_EVENT_ID, required = false) String lastEventId) {
+        return sockService.subscribeChanges(color, comparison, cottonPercentage, lastEventId);
+    }
+
+    @GetMapping("/total")
+    @Operation(summary = "Получение суммарного количества носков с фильтрацией")
+    public SocksTotalResponse getTotalWithFilter(
+            @RequestParam(required = false) String color,
+            @RequestParam(required = false, defaultValue = "equal") Comparison comparison,
+            @RequestParam(required = false) List<Float> cottonPercentage,
+            @RequestParam(required = false, defaultValue = "false") boolean groupByColor) {
+        return sockService.getTotalWithFilters(color, comparison, cottonPercentage, groupByColor);
+    }
+
+    @GetMapping("/facets")
+    @Operation(summary = "Суммарные остатки по цветам и корзинам процента хлопка")
+    public SocksFacetsResponse getFacets() {
+        return sockService.getFacets();
+    }
+
+    @GetMapping("/stock")
+    @Operation(summary = "Остаток позиции, текущий или на момент времени at")
+    public SockDto getStock(@RequestParam String color,
+                            @RequestParam float cottonPercentage,
+                            @RequestParam(required = false) Instant at) {
+        return sockService.getStock(color, cottonPercentage, at);
     }
 
     @PostMapping("/income")
     @Operation(summary = "Регистрация прихода носков")
-    public ResponseEntity<?> incomeSocks(@RequestBody @Valid SockDto sock) {
-        sockService.sockIncome(sock);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+    public ResponseEntity<?> incomeSocks(@RequestBody @Valid SockDto sock,
+                                         @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String key) {
+        IdempotentResult result = idempotencyService.execute(key, "income", sock, HttpStatus.CREATED.value(),
+                () -> sockService.sockIncome(sock));
+        return idempotentResponse(result);
     }
 
     @PostMapping("/outcome")
     @Operation(summary = "Регистрация отпуска носков")
-    public ResponseEntity<?> outcomeSocks(@RequestBody @Valid SockDto sock) {
-        sockService.sockOutcome(sock);
-        return ResponseEntity.ok().build();
+    public ResponseEntity<?> outcomeSocks(@RequestBody @Valid SockDto sock,
+                                          @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String key) {
+        IdempotentResult result = idempotencyService.execute(key, "outcome", sock, HttpStatus.OK.value(),
+                () -> sockService.sockOutcome(sock));
+        return idempotentResponse(result);
+    }
+
+    @PostMapping("/movements")
+    @Operation(summary = "Пакетная регистрация прихода и отпуска носков в одной транзакции")
+    public MovementsResponse applyMovements(@RequestBody List<@Valid MovementDto> movements) {
+        return sockService.applyMovements(movements);
     }
 
     @PutMapping("/{id}")
@@ -59,10 +169,38 @@ public class SocksController {
     }
 
     @PostMapping("/batch")
-    @Operation(summary = "Загрузка партий носков из CSV файла")
-    public ResponseEntity<?> uploadFromFile(@RequestParam("file") MultipartFile file) {
+    @Operation(summary = "Загрузка партий носков из CSV или XLSX файла",
+            description = "Формат определяется по Content-Type файла или расширению .xlsx. "
+                    + "При async=true файл загружается в фоне частями, в ответе 202 и состояние задачи")
+    public ResponseEntity<?> uploadFromFile(@RequestParam("file") MultipartFile file,
+                                            @RequestParam(required = false, defaultValue = "false") boolean async) {
+        if (async) {
+            ImportJobStatus job = importJobService.submit(file);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/socks/batch/jobs/" + job.id()))
+                    .body(job);
+        }
         sockService.uploadFromFile(file);
         return ResponseEntity.ok().build();
     }
 
+    @GetMapping("/batch/jobs/{id}")
+    @Operation(summary = "Состояние фоновой загрузки партий")
+    public ImportJobStatus getImportJob(@PathVariable UUID id) {
+        return importJobService.getStatus(id);
+    }
+
+    @DeleteMapping("/batch/jobs/{id}")
+    @Operation(summary = "Отмена фоновой загрузки партий, уже записанные части остаются")
+    public ImportJobStatus cancelImportJob(@PathVariable UUID id) {
+        return importJobService.cancel(id);
+    }
+
+    private ResponseEntity<?> idempotentResponse(IdempotentResult result) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(result.status());
+        if (result.replayed())
+            response.header(IDEMPOTENT_REPLAYED, "true");
+        return response.build();
+    }
+
 }
@@ -0,0 +1,16 @@
+package org.example.sockstask.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Корзина по проценту хлопка")
+public record CottonBucket(
+        @Schema(description = "Нижняя граница, включительно")
+        int from,
+
+        @Schema(description = "Верхняя граница, не включительно (100 входит в последнюю корзину)")
+        int to,
+
+        @Schema(description = "Суммарное количество носков")
+        long quantity
+) {
+}
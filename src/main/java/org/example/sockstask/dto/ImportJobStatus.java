@@ -0,0 +1,42 @@
+package org.example.sockstask.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import org.example.sockstask.util.ImportJobState;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Builder
+@Schema(description = "Состояние фоновой загрузки партий")
+public record ImportJobStatus(
+        @Schema(description = "Идентификатор задачи")
+        UUID id,
+
+        @Schema(description = "Состояние задачи")
+        ImportJobState state,
+
+        @Schema(description = "Прочитано строк файла")
+        long rowsParsed,
+
+        @Schema(description = "Строк в закоммиченных частях")
+        long rowsApplied,
+
+        @Schema(description = "Строк, пропущенных из-за неверного формата")
+        long rowsRejected,
+
+        @Schema(description = "Скорость чтения файла, строк в секунду")
+        double rowsPerSecond,
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Instant startedAt,
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Instant finishedAt,
+
+        @Schema(description = "Причина ошибки для задачи в состоянии FAILED")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String error
+) {
+}
@@ -0,0 +1,35 @@
+package org.example.sockstask.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+
+import static org.example.sockstask.util.Constant.*;
+
+@Schema(description = "Движение носков: положительное количество - приход, отрицательное - отпуск")
+public record MovementDto(
+        @Schema(description = "Цвет носка", example = COLOR_EXAMPLE)
+        @NotNull
+        String color,
+
+        @Schema(description = "Процент содержания хлопка", example = COTTON_PERCENTAGE_EXAMPLE)
+        @Positive
+        @Min(0) @Max(100)
+        float cottonPercentage,
+
+        @Schema(description = "Изменение количества на складе", example = QUANTITY_EXAMPLE)
+        @Min(-Integer.MAX_VALUE)
+        int quantity
+) {
+
+    @JsonIgnore
+    @Schema(hidden = true)
+    @AssertTrue(message = "quantity must not be zero")
+    public boolean isQuantityNonZero() {
+        return quantity != 0;
+    }
+}
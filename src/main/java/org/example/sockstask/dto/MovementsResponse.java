@@ -0,0 +1,17 @@
+package org.example.sockstask.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+import java.util.List;
+
+@Builder
+@Schema(description = "Результат применения пакета движений")
+public record MovementsResponse(
+        @Schema(description = "Количество измененных позиций после объединения строк")
+        int appliedPositions,
+
+        @Schema(description = "Отклоненные строки, при наличии хотя бы одной пакет не применяется")
+        List<RejectedMovement> rejected
+) {
+}
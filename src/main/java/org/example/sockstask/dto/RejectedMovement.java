@@ -0,0 +1,16 @@
+package org.example.sockstask.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Отклоненная строка пакета движений")
+public record RejectedMovement(
+        @Schema(description = "Номер строки в запросе, с нуля")
+        int line,
+
+        @Schema(description = "Строка запроса")
+        MovementDto movement,
+
+        @Schema(description = "Причина отказа")
+        String reason
+) {
+}
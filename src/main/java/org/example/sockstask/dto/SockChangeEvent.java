@@ -0,0 +1,19 @@
+package org.example.sockstask.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+
+@Schema(description = "Изменение остатка позиции")
+public record SockChangeEvent(
+        @Schema(description = "Цвет носка")
+        String color,
+
+        @Schema(description = "Процент содержания хлопка")
+        float cottonPercentage,
+
+        @Schema(description = "Изменение количества в закоммиченной записи")
+        int delta,
+
+        @Schema(description = "Остаток позиции на момент отправки события")
+        int quantity
+) {
+}
@@ -0,0 +1,18 @@
+package org.example.sockstask.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+import java.util.List;
+import java.util.Map;
+
+@Builder
+@Schema(description = "Суммарные остатки по цветам и корзинам процента хлопка")
+public record SocksFacetsResponse(
+        @Schema(description = "Суммарное количество по цветам, без нулевых")
+        Map<String, Long> quantityByColor,
+
+        @Schema(description = "Суммарное количество по корзинам процента хлопка, все корзины по порядку")
+        List<CottonBucket> quantityByCottonPercentage
+) {
+}
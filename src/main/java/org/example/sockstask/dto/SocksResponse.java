@@ -1,5 +1,6 @@
 package org.example.sockstask.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Builder;
 
@@ -8,6 +9,10 @@ import java.util.List;
 @Builder
 @Schema(description = "Список носков подходящих по условиям")
 public record SocksResponse(
-        List<SockDto> socks
+        List<SockDto> socks,
+
+        @Schema(description = "Курсор следующей страницы, отсутствует на последней странице")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        String nextCursor
 ) {
 }
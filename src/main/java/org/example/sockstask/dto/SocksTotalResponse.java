@@ -0,0 +1,22 @@
+package org.example.sockstask.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+
+import java.util.Map;
+
+@Builder
+@Schema(description = "Общее количество носков подходящих по условиям")
+public record SocksTotalResponse(
+        @Schema(description = "Суммарное количество носков")
+        long quantity,
+
+        @Schema(description = "Количество позиций (цвет + процент хлопка)")
+        long positions,
+
+        @Schema(description = "Суммарное количество по цветам, только при groupByColor=true")
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        Map<String, Long> quantityByColor
+) {
+}
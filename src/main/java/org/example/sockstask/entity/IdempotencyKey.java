@@ -0,0 +1,31 @@
+package org.example.sockstask.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "idempotency_key")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter @Setter
+public class IdempotencyKey {
+
+    @Id
+    @Column(name = "key")
+    private String key;
+
+    @Column(name = "request_hash", nullable = false)
+    private String requestHash;
+
+    @Column(name = "response_status", nullable = false)
+    private int responseStatus;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt;
+
+}
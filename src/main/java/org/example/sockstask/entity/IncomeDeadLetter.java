@@ -0,0 +1,44 @@
+package org.example.sockstask.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Объединенный приход, на который клиенты уже получили ответ, но который не удалось записать в sock.
+ * Разбирается вручную.
+ */
+@Entity
+@Table(name = "sock_income_dead_letter")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter @Setter
+public class IncomeDeadLetter {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "color", nullable = false)
+    private String color;
+
+    @Column(name = "cotton_percentage", nullable = false)
+    private float cottonPercentage;
+
+    /**
+     * long: сюда попадают и суммы, не поместившиеся в int.
+     */
+    @Column(name = "delta", nullable = false)
+    private long delta;
+
+    @Column(name = "error")
+    private String error;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
+    private Instant createdAt;
+
+}
@@ -1,7 +1,6 @@
 package org.example.sockstask.entity;
 
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -9,7 +8,6 @@ import lombok.Setter;
 @Entity
 @Table(name = "sock")
 @NoArgsConstructor
-@AllArgsConstructor
 @Getter @Setter
 public class Sock {
 
@@ -26,12 +24,23 @@ public class Sock {
     @Column(name = "quantity", nullable = false)
     private int quantity;
 
-    public void income(int quantity) {
-        this.quantity += quantity;
+    /**
+     * Остаток в частях sock_shard у разбитых позиций. Полный остаток - quantity + shardQuantity.
+     * В таблице sock не хранится: выборки SockRepo дочитывают его отдельным запросом, только если
+     * разбитые позиции вообще есть. lockById и lockAllByKeys его не заполняют.
+     */
+    @Transient
+    private int shardQuantity;
+
+    public Sock(Long id, String color, float cottonPercentage, int quantity) {
+        this.id = id;
+        this.color = color;
+        this.cottonPercentage = cottonPercentage;
+        this.quantity = quantity;
     }
 
-    public void outcome(int quantity) {
-        this.quantity -= quantity;
+    public int getTotalQuantity() {
+        return quantity + shardQuantity;
     }
 
 }
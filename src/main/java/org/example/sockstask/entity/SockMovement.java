@@ -0,0 +1,49 @@
+package org.example.sockstask.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.example.sockstask.util.MovementSource;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "sock_movement")
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter @Setter
+public class SockMovement {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "color", nullable = false)
+    private String color;
+
+    @Column(name = "cotton_percentage", nullable = false)
+    private float cottonPercentage;
+
+    @Column(name = "delta", nullable = false)
+    private int delta;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "source", nullable = false)
+    private MovementSource source;
+
+    /**
+     * true, если изменение уже учтено в sock.quantity.
+     */
+    @Column(name = "compacted", nullable = false)
+    private boolean compacted;
+
+    /**
+     * Время вставки строки (clock_timestamp(), а не начало транзакции). Движение становится видно
+     * только после коммита, который может быть позже этого времени.
+     */
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
+    private Instant createdAt;
+
+}
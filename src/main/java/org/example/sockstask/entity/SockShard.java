@@ -0,0 +1,28 @@
+package org.example.sockstask.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "sock_shard")
+@IdClass(SockShardId.class)
+@NoArgsConstructor
+@AllArgsConstructor
+@Getter @Setter
+public class SockShard {
+
+    @Id
+    @Column(name = "sock_id")
+    private Long sockId;
+
+    @Id
+    @Column(name = "shard")
+    private int shard;
+
+    @Column(name = "quantity", nullable = false)
+    private int quantity;
+
+}
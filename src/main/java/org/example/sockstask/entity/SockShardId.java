@@ -0,0 +1,18 @@
+package org.example.sockstask.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+public class SockShardId implements Serializable {
+
+    private Long sockId;
+
+    private int shard;
+
+}
@@ -0,0 +1,285 @@
+package org.example.sockstask.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.SockChangeEvent;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.exception.TooManySubscribersException;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поток изменений остатков для подписчиков SSE. После коммита записи ее приращения уходят в очередь,
+ * поток sock-change-publisher одним запросом читает новые остатки затронутых позиций, нумерует события
+ * и раскладывает их по очередям подписчиков. Очередь подписчика ограничена buffer-size: если клиент
+ * не успевает читать, соединение закрывается, а не растет в памяти.
+ * Последние replay-size событий хранятся для продолжения с Last-Event-ID. Если нужное событие уже вытеснено
+ * или id от другого запуска, клиент первым получает событие reset и должен перечитать остатки целиком.
+ * У каждого подписчика свой поток отправки, поэтому подписчиков не больше max-subscribers.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SockChangeStream {
+
+    public static final String CHANGE = "change";
+    public static final String RESET = "reset";
+
+    private final SockRepository sockRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    private final String epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final Object lock = new Object();
+    private final ArrayDeque<Entry> replay = new ArrayDeque<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private long sequence;
+    private volatile boolean lost;
+
+    private BlockingQueue<SocksChangedEvent> pending;
+    private ExecutorService publisher;
+    private ExecutorService senders;
+    private Counter overflows;
+
+    @PostConstruct
+    public void start() {
+        pending = new LinkedBlockingQueue<>(socksProperties.getChanges().getReplaySize());
+        overflows = Counter.builder("socks.changes.overflows")
+                .description("Подписчики, отключенные из-за переполнения очереди событий")
+                .register(meterRegistry);
+        meterRegistry.gauge("socks.changes.subscribers", subscribers, Set::size);
+
+        publisher = Executors.newSingleThreadExecutor(r -> new Thread(r, "sock-change-publisher"));
+        publisher.execute(this::publish);
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = new ThreadPoolExecutor(0, socksProperties.getChanges().getMaxSubscribers(),
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+            Thread thread = new Thread(r, "sock-change-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        publisher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(this::complete);
+    }
+
+    /**
+     * Не ждет чтения остатков: писатель только кладет приращения в очередь. Если очередь переполнена,
+     * события теряются, и всем подписчикам отправляется reset.
+     */
+    @TransactionalEventListener
+    public void onSocksChanged(SocksChangedEvent event) {
+        if (!pending.offer(event))
+            lost = true;
+    }
+
+    /**
+     * @throws TooManySubscribersException если уже обслуживается max-subscribers подписчиков
+     */
+    public SseEmitter subscribe(SockFilter filter, String lastEventId) {
+        SocksProperties.Changes properties = socksProperties.getChanges();
+        SseEmitter emitter = new SseEmitter(properties.getTimeout().toMillis());
+        Subscriber subscriber = new Subscriber(filter, emitter, properties.getBufferSize());
+
+        synchronized (lock) {
+            if (subscribers.size() >= properties.getMaxSubscribers())
+                throw new TooManySubscribersException();
+            Long after = parseEventId(lastEventId);
+            if (lastEventId != null && (after == null || !replay.isEmpty() && replay.getFirst().id > after + 1
+                    || replay.isEmpty() && after != sequence)) {
+                subscriber.reset = true;
+            } else if (after != null) {
+                for (Entry entry : replay) {
+                    if (entry.id > after && subscriber.accepts(entry) && !subscriber.queue.offer(entry)) {
+                        subscriber.reset = true;
+                        subscriber.queue.clear();
+                        break;
+                    }
+                }
+            }
+            emitter.onCompletion(() -> remove(subscriber));
+            emitter.onTimeout(() -> remove(subscriber));
+            emitter.onError(e -> remove(subscriber));
+            try {
+                subscriber.sender = senders.submit(() -> send(subscriber));
+            } catch (RejectedExecutionException e) {
+                // поток отключенного подписчика еще не завершился
+                throw new TooManySubscribersException();
+            }
+            subscribers.add(subscriber);
+        }
+        return emitter;
+    }
+
+    private void publish() {
+        List<SocksChangedEvent> events = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                events.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(events);
+            try {
+                publish(events);
+            } catch (RuntimeException e) {
+                log.error("Failed to publish {} sock changes", events.size(), e);
+                lost = true;
+            }
+            events.clear();
+
+            if (lost) {
+                lost = false;
+                resetAll();
+            }
+        }
+    }
+
+    /**
+     * Один запрос за остатками на все накопившиеся события. Остаток может уже включать записи,
+     * закоммиченные позже события, но не бывает старее него.
+     */
+    private void publish(List<SocksChangedEvent> events) {
+        Set<SockKey> keys = new HashSet<>();
+        events.forEach(event -> keys.addAll(event.deltas().keySet()));
+        // приращения bulk-записи не сохраняются, подписчики перечитывают остатки после reset
+        if (events.stream().anyMatch(SocksChangedEvent::bulk))
+            lost = true;
+        Map<SockKey, Integer> quantities = new HashMap<>();
+        List<Sock> socks = new TransactionTemplate(transactionManager)
+                .execute(status -> sockRepository.findAllByKeys(keys));
+        socks.forEach(sock -> quantities.put(new SockKey(sock.getColor(), sock.getCottonPercentage()),
+                sock.getTotalQuantity()));
+
+        int replaySize = socksProperties.getChanges().getReplaySize();
+        synchronized (lock) {
+            for (SocksChangedEvent event : events) {
+                event.deltas().forEach((key, delta) -> {
+                    Entry entry = new Entry(++sequence, key, new SockChangeEvent(key.color(), key.cottonPercentage(),
+                            delta, quantities.getOrDefault(key, 0)));
+                    replay.addLast(entry);
+                    if (replay.size() > replaySize)
+                        replay.removeFirst();
+                    subscribers.forEach(subscriber -> offer(subscriber, entry));
+                });
+            }
+        }
+    }
+
+    private void offer(Subscriber subscriber, Entry entry) {
+        if (!subscriber.accepts(entry) || subscriber.queue.offer(entry))
+            return;
+
+        log.debug("Sock change subscriber is too slow, closing the stream");
+        overflows.increment();
+        remove(subscriber);
+        subscriber.sender.cancel(true);
+    }
+
+    private void resetAll() {
+        synchronized (lock) {
+            replay.clear();
+            for (Subscriber subscriber : subscribers) {
+                remove(subscriber);
+                subscriber.sender.cancel(true);
+            }
+        }
+        log.warn("Sock change events were lost, subscribers disconnected");
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscribers.remove(subscriber))
+            subscriber.closed = true;
+    }
+
+    private void send(Subscriber subscriber) {
+        long heartbeat = socksProperties.getChanges().getHeartbeatInterval().toMillis();
+        try {
+            if (subscriber.reset)
+                subscriber.emitter.send(SseEmitter.event().name(RESET).data(""));
+            while (!subscriber.closed) {
+                Entry entry = subscriber.queue.poll(heartbeat, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    subscriber.emitter.send(SseEmitter.event().comment(""));
+                } else {
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(epoch + "-" + entry.id)
+                            .name(CHANGE)
+                            .data(entry.event, MediaType.APPLICATION_JSON));
+                }
+            }
+            complete(subscriber);
+        } catch (InterruptedException e) {
+            complete(subscriber);
+        } catch (IOException | IllegalStateException e) {
+            remove(subscriber);
+        }
+    }
+
+    private void complete(Subscriber subscriber) {
+        remove(subscriber);
+        try {
+            subscriber.emitter.complete();
+        } catch (IllegalStateException e) {
+            log.debug("Sock change stream already closed", e);
+        }
+    }
+
+    /**
+     * @return номер события или null, если id не от этого запуска
+     */
+    private Long parseEventId(String eventId) {
+        if (eventId == null || !eventId.startsWith(epoch + "-"))
+            return null;
+        try {
+            return Long.parseLong(eventId.substring(epoch.length() + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private record Entry(long id, SockKey key, SockChangeEvent event) {
+    }
+
+    private static class Subscriber {
+
+        private final SockFilter filter;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Entry> queue;
+        private volatile Future<?> sender;
+        private volatile boolean reset;
+        private volatile boolean closed;
+
+        private Subscriber(SockFilter filter, SseEmitter emitter, int bufferSize) {
+            this.filter = filter;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private boolean accepts(Entry entry) {
+            return filter.matches(entry.key);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.sockstask.event;
+
+import org.example.sockstask.util.SockKey;
+
+import java.util.Map;
+
+/**
+ * Изменение остатков в рамках одной транзакции: прирост количества по каждой затронутой позиции.
+ * Слушатели получают событие только после коммита.
+ * Если bulk, позиций слишком много, чтобы держать их до коммита: deltas пуст, и слушатели
+ * перечитывают все остатки.
+ */
+public record SocksChangedEvent(
+        Map<SockKey, Integer> deltas,
+        boolean bulk
+) {
+
+    public SocksChangedEvent(Map<SockKey, Integer> deltas) {
+        this(deltas, false);
+    }
+
+    public static SocksChangedEvent all() {
+        return new SocksChangedEvent(Map.of(), true);
+    }
+}
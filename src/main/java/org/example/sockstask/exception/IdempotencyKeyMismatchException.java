@@ -0,0 +1,5 @@
+package org.example.sockstask.exception;
+
+public class IdempotencyKeyMismatchException extends RuntimeException {
+    public IdempotencyKeyMismatchException() {super("Idempotency key was used for another request");}
+}
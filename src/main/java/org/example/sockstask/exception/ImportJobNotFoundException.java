@@ -0,0 +1,5 @@
+package org.example.sockstask.exception;
+
+public class ImportJobNotFoundException extends RuntimeException {
+    public ImportJobNotFoundException() {super("Import job not found");}
+}
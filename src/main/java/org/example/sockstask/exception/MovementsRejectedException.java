@@ -0,0 +1,17 @@
+package org.example.sockstask.exception;
+
+import lombok.Getter;
+import org.example.sockstask.dto.RejectedMovement;
+
+import java.util.List;
+
+@Getter
+public class MovementsRejectedException extends RuntimeException {
+
+    private final List<RejectedMovement> rejected;
+
+    public MovementsRejectedException(List<RejectedMovement> rejected) {
+        super("Movements rejected");
+        this.rejected = rejected;
+    }
+}
@@ -0,0 +1,5 @@
+package org.example.sockstask.exception;
+
+public class SockAlreadyExistsException extends RuntimeException {
+    public SockAlreadyExistsException() {super("Socks with this color and cotton percentage already exist");}
+}
@@ -0,0 +1,5 @@
+package org.example.sockstask.exception;
+
+public class TooManyImportJobsException extends RuntimeException {
+    public TooManyImportJobsException() {super("Too many import jobs");}
+}
@@ -0,0 +1,5 @@
+package org.example.sockstask.exception;
+
+public class TooManySubscribersException extends RuntimeException {
+    public TooManySubscribersException() {super("Too many change stream subscribers");}
+}
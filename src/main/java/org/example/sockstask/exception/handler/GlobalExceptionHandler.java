@@ -1,15 +1,24 @@
 package org.example.sockstask.exception.handler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.exception.IdempotencyKeyMismatchException;
+import org.example.sockstask.exception.ImportJobNotFoundException;
 import org.example.sockstask.exception.InvalidCsvFileException;
+import org.example.sockstask.dto.MovementsResponse;
 import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.exception.MovementsRejectedException;
 import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.exception.SockAlreadyExistsException;
 import org.example.sockstask.exception.SockNotFoundException;
+import org.example.sockstask.exception.TooManyImportJobsException;
+import org.example.sockstask.exception.TooManySubscribersException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 @RestControllerAdvice
@@ -21,11 +30,22 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body("Invalid " + ex.getName() + " parameter");
     }
 
-    @ExceptionHandler(MethodArgumentNotValidException.class)
-    public ResponseEntity<String> handleNotValidException(MethodArgumentNotValidException ex) {
+    @ExceptionHandler({
+            MethodArgumentNotValidException.class,
+            HandlerMethodValidationException.class
+    })
+    public ResponseEntity<String> handleNotValidException(Exception ex) {
         return ResponseEntity.badRequest().body("Invalid request parameter");
     }
 
+    @ExceptionHandler(MovementsRejectedException.class)
+    public ResponseEntity<MovementsResponse> handleMovementsRejected(MovementsRejectedException ex) {
+        return ResponseEntity.badRequest().body(MovementsResponse.builder()
+                .appliedPositions(0)
+                .rejected(ex.getRejected())
+                .build());
+    }
+
     @ExceptionHandler({
             NotEnoughSocksException.class,
             InvalidCsvFileException.class,
@@ -35,11 +55,38 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(ex.getMessage());
     }
 
-    @ExceptionHandler(SockNotFoundException.class)
-    public ResponseEntity<String> handleSockNotFound(SockNotFoundException ex) {
+    @ExceptionHandler({
+            SockNotFoundException.class,
+            ImportJobNotFoundException.class
+    })
+    public ResponseEntity<String> handleNotFound(RuntimeException ex) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(SockAlreadyExistsException.class)
+    public ResponseEntity<String> handleConflict(SockAlreadyExistsException ex) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    public ResponseEntity<String> handleIdempotencyKeyMismatch(IdempotencyKeyMismatchException ex) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(ex.getMessage());
+    }
+
+    @ExceptionHandler(TooManyImportJobsException.class)
+    public ResponseEntity<String> handleTooManyImportJobs(TooManyImportJobsException ex) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "10")
+                .body(ex.getMessage());
+    }
+
+    @ExceptionHandler(TooManySubscribersException.class)
+    public ResponseEntity<String> handleTooManySubscribers(TooManySubscribersException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "10")
+                .body(ex.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleException(Exception ex) {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Something went wrong...");
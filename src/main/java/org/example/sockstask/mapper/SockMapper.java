@@ -10,8 +10,10 @@ import static org.mapstruct.MappingConstants.ComponentModel.SPRING;
 @Mapper(componentModel = SPRING)
 public interface SockMapper {
 
+    @Mapping(source = "totalQuantity", target = "quantity")
     SockDto toSockDto(Sock sock);
 
     @Mapping(expression = "java(null)", target = "id")
+    @Mapping(target = "shardQuantity", ignore = true)
     Sock toSock(SockDto sockDto);
 }
@@ -0,0 +1,90 @@
+package org.example.sockstask.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Счетчики складских операций. Скорость (единиц, строк в секунду) считается по ним в Prometheus через rate().
+ * Изменения склада учитываются после коммита текущей транзакции, чтобы откаты не завышали счетчики.
+ * Отказы учитываются сразу: транзакция с отказом как раз откатывается.
+ */
+@Component
+public class SockMetrics {
+
+    private final Counter incomeUnits;
+    private final Counter outcomeUnits;
+    private final Counter outcomeRejected;
+    private final Counter batchRows;
+    private final DistributionSummary batchChunkSize;
+    private final Counter shardTransfers;
+    private final Counter shardPromotions;
+
+    public SockMetrics(MeterRegistry meterRegistry) {
+        incomeUnits = Counter.builder("socks.income.units")
+                .description("Принято носков")
+                .register(meterRegistry);
+        outcomeUnits = Counter.builder("socks.outcome.units")
+                .description("Отпущено носков")
+                .register(meterRegistry);
+        outcomeRejected = Counter.builder("socks.outcome.rejected")
+                .description("Отказы в отпуске из-за нехватки носков")
+                .register(meterRegistry);
+        batchRows = Counter.builder("socks.batch.rows")
+                .description("Обработано строк файлов партий")
+                .register(meterRegistry);
+        batchChunkSize = DistributionSummary.builder("socks.batch.chunk.size")
+                .description("Позиций в одном upsert при загрузке партии")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        shardTransfers = Counter.builder("socks.shards.transfers")
+                .description("Отпусков из разбитой позиции, для которых пришлось собирать остаток из всех частей")
+                .register(meterRegistry);
+        shardPromotions = Counter.builder("socks.shards.promotions")
+                .description("Разбиений позиций на части")
+                .register(meterRegistry);
+    }
+
+    public void income(int quantity) {
+        afterCommit(() -> incomeUnits.increment(quantity));
+    }
+
+    public void outcome(int quantity) {
+        afterCommit(() -> outcomeUnits.increment(quantity));
+    }
+
+    public void outcomeRejected() {
+        outcomeRejected.increment();
+    }
+
+    public void batchChunk(int rows, int positions) {
+        afterCommit(() -> {
+            batchRows.increment(rows);
+            batchChunkSize.record(positions);
+        });
+    }
+
+    public void shardTransfer() {
+        afterCommit(shardTransfers::increment);
+    }
+
+    public void shardPromotion() {
+        shardPromotions.increment();
+    }
+
+    private static void afterCommit(Runnable record) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.sockstask.repository;
+
+import org.example.sockstask.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, String> {
+
+    /**
+     * @return 0, если ключ уже записан. Если ключ вставляет параллельная транзакция, запрос ждет ее завершения.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO idempotency_key (key, request_hash, response_status, created_at)
+            VALUES (:key, :requestHash, :responseStatus, :createdAt)
+            ON CONFLICT (key) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(String key, String requestHash, int responseStatus, Instant createdAt);
+
+    @Modifying
+    @Query(value = "DELETE FROM idempotency_key WHERE created_at < :before", nativeQuery = true)
+    int deleteCreatedBefore(Instant before);
+
+}
@@ -0,0 +1,7 @@
+package org.example.sockstask.repository;
+
+import org.example.sockstask.entity.IncomeDeadLetter;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface IncomeDeadLetterRepository extends JpaRepository<IncomeDeadLetter, Long> {
+}
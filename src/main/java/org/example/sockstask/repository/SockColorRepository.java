@@ -0,0 +1,23 @@
+package org.example.sockstask.repository;
+
+import org.example.sockstask.entity.SockColor;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Optional;
+
+public interface SockColorRepository extends JpaRepository<SockColor, Integer> {
+
+    /**
+     * Если цвет в другом регистре уже есть, ничего не вставляет. Параллельная вставка того же цвета ждет
+     * завершения первой транзакции на уникальном индексе по lower(name).
+     */
+    @Modifying
+    @Query(value = "INSERT INTO sock_color (name) VALUES (:name) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(String name);
+
+    @Query(value = "SELECT * FROM sock_color WHERE lower(name) = lower(:name)", nativeQuery = true)
+    Optional<SockColor> findByNameIgnoreCase(String name);
+
+}
@@ -0,0 +1,40 @@
+package org.example.sockstask.repository;
+
+import org.example.sockstask.entity.SockMovement;
+import org.example.sockstask.repository.custom.SockMovementRepo;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+
+public interface SockMovementRepository extends JpaRepository<SockMovement, Long>, SockMovementRepo {
+
+    /**
+     * Остаток из снимка в sock, его частей в sock_shard и еще не свернутых в него движений, одним запросом, чтобы
+     * параллельное сжатие не учло одно движение дважды. null, если позиции нет.
+     */
+    @Query(value = """
+            SELECT SUM(quantity) FROM (
+                SELECT quantity FROM sock WHERE color = :color AND cotton_percentage = :cottonPercentage
+                UNION ALL
+                SELECT ss.quantity FROM sock_shard ss JOIN sock s ON s.id = ss.sock_id
+                WHERE s.color = :color AND s.cotton_percentage = :cottonPercentage
+                UNION ALL
+                SELECT delta FROM sock_movement
+                WHERE color = :color AND cotton_percentage = :cottonPercentage AND NOT compacted
+            ) stock
+            """, nativeQuery = true)
+    Long currentStock(String color, float cottonPercentage);
+
+    /**
+     * Остаток на момент времени по журналу движений. null, если до этого момента движений не было.
+     * Момент движения - время вставки строки: транзакция, закоммиченная после at, но записавшая
+     * движение до него, в остаток входит.
+     */
+    @Query(value = """
+            SELECT SUM(delta) FROM sock_movement
+            WHERE color = :color AND cotton_percentage = :cottonPercentage AND created_at <= :at
+            """, nativeQuery = true)
+    Long stockAt(String color, float cottonPercentage, Instant at);
+
+}
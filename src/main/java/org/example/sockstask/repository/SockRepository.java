@@ -1,12 +1,51 @@
 package org.example.sockstask.repository;
 
+import jakarta.persistence.LockModeType;
 import org.example.sockstask.entity.Sock;
 import org.example.sockstask.repository.custom.SockRepo;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 import java.util.Optional;
 
 public interface SockRepository extends JpaRepository<Sock, Long>, SockRepo {
 
     Optional<Sock> findByColorAndCottonPercentage(String color, float cottonPercentage);
 
+    boolean existsByColorAndCottonPercentage(String color, float cottonPercentage);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM Sock s WHERE s.id = :id")
+    Optional<Sock> lockById(Long id);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO sock (color, cotton_percentage, quantity)
+            VALUES (:color, :cottonPercentage, :quantity)
+            ON CONFLICT (color, cotton_percentage) DO UPDATE SET quantity = sock.quantity + excluded.quantity
+            """, nativeQuery = true)
+    void addQuantity(String color, float cottonPercentage, int quantity);
+
+    @Modifying
+    @Query(value = """
+            UPDATE sock SET quantity = quantity - :quantity
+            WHERE color = :color AND cotton_percentage = :cottonPercentage AND quantity >= :quantity
+            """, nativeQuery = true)
+    int subtractQuantity(String color, float cottonPercentage, int quantity);
+
+    /**
+     * Остатки sock.quantity, сгруппированные по цвету и номеру корзины floor(cotton_percentage / bucketWidth):
+     * строки [color, bucket, quantity]. Части разбитых позиций считает
+     * {@link SockShardRepository#sumByColorAndBucket}.
+     */
+    @Query(value = """
+            SELECT s.color, CAST(floor(s.cotton_percentage / :bucketWidth) AS integer) AS bucket, SUM(s.quantity)
+            FROM sock s
+            GROUP BY s.color, bucket
+            """, nativeQuery = true)
+    List<Object[]> sumByColorAndBucket(int bucketWidth);
+
 }
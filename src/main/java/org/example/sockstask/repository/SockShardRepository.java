@@ -0,0 +1,69 @@
+package org.example.sockstask.repository;
+
+import jakarta.persistence.LockModeType;
+import org.example.sockstask.entity.SockShard;
+import org.example.sockstask.entity.SockShardId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface SockShardRepository extends JpaRepository<SockShard, SockShardId> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<SockShard> findAllBySockIdOrderByShard(Long sockId);
+
+    @Modifying
+    @Query(value = """
+            UPDATE sock_shard ss SET quantity = ss.quantity + :quantity
+            FROM sock s
+            WHERE s.id = ss.sock_id AND s.color = :color AND s.cotton_percentage = :cottonPercentage
+                AND ss.shard = :shard
+            """, nativeQuery = true)
+    int addToShard(String color, float cottonPercentage, int shard, int quantity);
+
+    /**
+     * Списывает остаток из случайной части, в которой его хватает, пропуская части,
+     * заблокированные параллельными транзакциями.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE sock_shard SET quantity = quantity - :quantity
+            WHERE (sock_id, shard) IN (
+                SELECT ss.sock_id, ss.shard FROM sock_shard ss JOIN sock s ON s.id = ss.sock_id
+                WHERE s.color = :color AND s.cotton_percentage = :cottonPercentage AND ss.quantity >= :quantity
+                ORDER BY random() LIMIT 1
+                FOR UPDATE OF ss SKIP LOCKED)
+            """, nativeQuery = true)
+    int takeFromAnyShard(String color, float cottonPercentage, int quantity);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO sock_shard (sock_id, shard, quantity)
+            SELECT :sockId, generate_series(0, :shards - 1), 0
+            ON CONFLICT DO NOTHING
+            """, nativeQuery = true)
+    void insertShards(long sockId, int shards);
+
+    /**
+     * @return color, cotton_percentage и число частей для каждой разбитой позиции
+     */
+    @Query(value = """
+            SELECT s.color, s.cotton_percentage, COUNT(*) FROM sock_shard ss JOIN sock s ON s.id = ss.sock_id
+            GROUP BY s.color, s.cotton_percentage
+            """, nativeQuery = true)
+    List<Object[]> countShards();
+
+    /**
+     * Остатки частей, сгруппированные так же, как в {@link SockRepository#sumByColorAndBucket}.
+     */
+    @Query(value = """
+            SELECT s.color, CAST(floor(s.cotton_percentage / :bucketWidth) AS integer) AS bucket, SUM(ss.quantity)
+            FROM sock_shard ss JOIN sock s ON s.id = ss.sock_id
+            GROUP BY s.color, bucket
+            """, nativeQuery = true)
+    List<Object[]> sumByColorAndBucket(int bucketWidth);
+
+}
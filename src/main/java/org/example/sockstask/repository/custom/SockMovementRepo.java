@@ -0,0 +1,37 @@
+package org.example.sockstask.repository.custom;
+
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockKey;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+
+public interface SockMovementRepo {
+
+    void appendAll(Map<SockKey, Integer> deltas, MovementSource source, boolean compacted);
+
+    /**
+     * Сворачивает несвернутые движения по позициям в sock.quantity.
+     *
+     * @return суммарные изменения по позициям
+     */
+    Map<SockKey, Integer> foldByKeys(Collection<SockKey> keys);
+
+    /**
+     * Сворачивает до limit самых старых несвернутых движений, пропуская строки, заблокированные
+     * параллельными транзакциями.
+     *
+     * @return суммарные изменения по позициям
+     */
+    Map<SockKey, Integer> foldOldest(int limit);
+
+    /**
+     * Заменяет свернутые движения, созданные до before, одной строкой OPENING на позицию с их суммой
+     * и временем before: остаток на любой момент не раньше before не меняется.
+     *
+     * @return число удаленных движений
+     */
+    int rollUpCompactedBefore(Instant before);
+
+}
@@ -1,12 +1,52 @@
 package org.example.sockstask.repository.custom;
 
+import org.example.sockstask.dto.SocksTotalResponse;
 import org.example.sockstask.entity.Sock;
-import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.PageCursor;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
 
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface SockRepo {
 
-    List<Sock> findAllWithFilters(String color, Comparison comparison, List<Float> cottonPercentage);
+    /**
+     * Все позиции с остатком частей sock_shard, в отличие от findAll из JpaRepository.
+     */
+    List<Sock> findAll();
+
+    List<Sock> findAllWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                                  PageCursor after, Integer limit);
+
+    Stream<Sock> streamWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc, int fetchSize);
+
+    List<Sock> findAllByKeys(Collection<SockKey> keys);
+
+    /**
+     * SELECT ... FOR UPDATE по позициям в порядке (color, cotton_percentage), чтобы параллельные
+     * пакетные изменения блокировали строки в одном порядке и не взаимоблокировались.
+     */
+    List<Sock> lockAllByKeys(Collection<SockKey> keys);
+
+    SocksTotalResponse totalWithFilters(SockFilter filter, boolean groupByColor);
+
+    void upsertAll(Map<SockKey, Integer> quantities);
+
+    /**
+     * Пишет позиции в out в CSV с заголовком color,cottonPercentage,quantity через COPY ... TO STDOUT,
+     * минуя Hibernate. Выполняется на соединении текущей транзакции.
+     */
+    void copyCsv(SockFilter filter, OutputStream out);
+
+    /**
+     * Могут ли в БД быть разбитые позиции: включено разбиение (skus или auto-promote-concurrency)
+     * или в sock_shard остались части с прошлых запусков. Если нет, запросы к sock_shard не выполняются.
+     */
+    boolean hasShards();
 
 }
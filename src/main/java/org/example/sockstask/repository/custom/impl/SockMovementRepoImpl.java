@@ -0,0 +1,125 @@
+package org.example.sockstask.repository.custom.impl;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import lombok.RequiredArgsConstructor;
+import org.example.sockstask.repository.custom.SockMovementRepo;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockKey;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class SockMovementRepoImpl implements SockMovementRepo {
+
+    /**
+     * Помечает движения свернутыми и прибавляет их суммы к sock одним запросом. Позиции обновляются
+     * в порядке (color, cotton_percentage), как и в lockAllByKeys.
+     */
+    private static final String FOLD = """
+            WITH folded AS (
+                UPDATE sock_movement SET compacted = true
+                WHERE %s
+                RETURNING color, cotton_percentage, delta
+            ), sums AS (
+                SELECT color, cotton_percentage, SUM(delta) AS delta FROM folded GROUP BY color, cotton_percentage
+            ), upserted AS (
+                INSERT INTO sock (color, cotton_percentage, quantity)
+                SELECT color, cotton_percentage, delta FROM sums ORDER BY color, cotton_percentage
+                ON CONFLICT (color, cotton_percentage) DO UPDATE SET quantity = sock.quantity + excluded.quantity
+            )
+            SELECT color, cotton_percentage, delta FROM sums
+            """;
+
+    /**
+     * Строка OPENING, оставшаяся от прошлого сворачивания, тоже старше before и входит в новую сумму.
+     */
+    private static final String ROLL_UP = """
+            WITH purged AS (
+                DELETE FROM sock_movement WHERE compacted AND created_at < :before
+                RETURNING color, cotton_percentage, delta
+            ), opening AS (
+                INSERT INTO sock_movement (color, cotton_percentage, delta, source, compacted, created_at)
+                SELECT color, cotton_percentage, CAST(SUM(delta) AS integer), 'OPENING', true, :before
+                FROM purged GROUP BY color, cotton_percentage
+            )
+            SELECT COUNT(*) FROM purged
+            """;
+
+    @PersistenceContext
+    private final EntityManager entityManager;
+
+    @Override
+    public void appendAll(Map<SockKey, Integer> deltas, MovementSource source, boolean compacted) {
+        if (deltas.isEmpty())
+            return;
+
+        String values = "(?, ?, ?, '" + source.name() + "', " + compacted + ")";
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO sock_movement (color, cotton_percentage, delta, source, compacted) VALUES ");
+        for (int i = 0; i < deltas.size(); i++) {
+            sql.append(i == 0 ? values : ", " + values);
+        }
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        int position = 1;
+        for (Map.Entry<SockKey, Integer> entry : deltas.entrySet()) {
+            query.setParameter(position++, entry.getKey().color());
+            query.setParameter(position++, entry.getKey().cottonPercentage());
+            query.setParameter(position++, entry.getValue());
+        }
+        query.executeUpdate();
+    }
+
+    @Override
+    public Map<SockKey, Integer> foldByKeys(Collection<SockKey> keys) {
+        if (keys.isEmpty())
+            return Map.of();
+
+        StringBuilder condition = new StringBuilder("NOT compacted AND (color, cotton_percentage) IN (");
+        for (int i = 0; i < keys.size(); i++) {
+            condition.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+        }
+        condition.append(")");
+
+        Query query = entityManager.createNativeQuery(FOLD.formatted(condition));
+        int position = 1;
+        for (SockKey key : keys) {
+            query.setParameter(position++, key.color());
+            query.setParameter(position++, key.cottonPercentage());
+        }
+        return sums(query);
+    }
+
+    @Override
+    public Map<SockKey, Integer> foldOldest(int limit) {
+        Query query = entityManager.createNativeQuery(FOLD.formatted("""
+                id IN (SELECT id FROM sock_movement WHERE NOT compacted ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED)
+                """));
+        query.setParameter(1, limit);
+        return sums(query);
+    }
+
+    @Override
+    public int rollUpCompactedBefore(Instant before) {
+        return ((Number) entityManager.createNativeQuery(ROLL_UP)
+                .setParameter("before", before)
+                .getSingleResult()).intValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<SockKey, Integer> sums(Query query) {
+        Map<SockKey, Integer> sums = new LinkedHashMap<>();
+        for (Object[] row : (List<Object[]>) query.getResultList()) {
+            sums.put(new SockKey((String) row[0], ((Number) row[1]).floatValue()), ((Number) row[2]).intValue());
+        }
+        return sums;
+    }
+}
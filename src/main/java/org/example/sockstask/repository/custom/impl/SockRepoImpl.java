@@ -1,38 +1,389 @@
 package org.example.sockstask.repository.custom.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import jakarta.persistence.PersistenceContext;
-import jakarta.persistence.criteria.CriteriaBuilder;
-import jakarta.persistence.criteria.CriteriaQuery;
-import jakarta.persistence.criteria.Predicate;
-import jakarta.persistence.criteria.Root;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import jakarta.persistence.criteria.*;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.cache.InventoryVersion;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.SocksTotalResponse;
 import org.example.sockstask.entity.Sock;
+import org.example.sockstask.entity.SockShard;
 import org.example.sockstask.repository.custom.SockRepo;
 import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.PageCursor;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
+import org.hibernate.Session;
+import org.hibernate.jpa.AvailableHints;
+import org.postgresql.PGConnection;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Repository;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
+/**
+ * Запросы с фильтрами собираются из JPQL-шаблонов: форм запроса немного (цвет задан или нет, вид сравнения
+ * по проценту хлопка, сортировка, курсор), строка для каждой строится один раз, и Hibernate берет разобранный
+ * запрос из своего кэша планов, а не разбирает Criteria-дерево заново. Шаблоны прогреваются при старте.
+ * Результаты findAllWithFilters кэшируются по нормализованному фильтру и версии склада {@link InventoryVersion},
+ * которую увеличивает каждая запись этого экземпляра: после записи старые результаты больше не находятся
+ * и вытесняются по размеру. Записи других экземпляров видны только через expire-after-write, поэтому
+ * кэш по умолчанию выключен.
+ * При чтении с реплики кэш выключен: отстающая реплика записала бы старые данные под новую версию.
+ */
+@Slf4j
 @Repository
 @RequiredArgsConstructor
 public class SockRepoImpl implements SockRepo {
 
+    private static final Map<QueryShape, String> FILTER_QUERIES = filterQueries();
+
     @PersistenceContext
     private final EntityManager entityManager;
+    private final SocksProperties socksProperties;
+    private final InventoryVersion inventoryVersion;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<CacheKey, List<Sock>> resultCache;
+    private volatile Boolean shardsPresent;
+
+    @PostConstruct
+    public void start() {
+        SocksProperties.QueryCache properties = socksProperties.getQueryCache();
+        if (!properties.isEnabled() || socksProperties.getReplica().isEnabled()) {
+            log.info("Filter query result cache is disabled");
+            return;
+        }
+        resultCache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaximumSize())
+                .expireAfterWrite(properties.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, resultCache, "socks-filter-query");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void precompile() {
+        FILTER_QUERIES.values().forEach(jpql -> entityManager.createQuery(jpql, Sock.class));
+        log.info("Precompiled {} filter queries", FILTER_QUERIES.size());
+    }
+
+    @Override
+    public List<Sock> findAll() {
+        return withShardQuantities(entityManager.createQuery("SELECT s FROM Sock s", Sock.class).getResultList());
+    }
+
+    @Override
+    public List<Sock> findAllWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                                         PageCursor after, Integer limit) {
+        if (resultCache == null)
+            return queryAllWithFilters(filter, fieldForSort, asc, after, limit);
+
+        // версия берется до запроса: запись, закоммиченная во время него, сделает этот результат ненужным
+        CacheKey key = new CacheKey(inventoryVersion.current(), normalize(filter), fieldForSort, asc, after, limit);
+        List<Sock> cached = resultCache.getIfPresent(key);
+        if (cached != null)
+            return new ArrayList<>(cached);
+
+        List<Sock> socks = queryAllWithFilters(filter, fieldForSort, asc, after, limit);
+        resultCache.put(key, socks.stream()
+                .map(sock -> new Sock(sock.getId(), sock.getColor(), sock.getCottonPercentage(),
+                        sock.getTotalQuantity()))
+                .toList());
+        return socks;
+    }
+
+    private List<Sock> queryAllWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                                           PageCursor after, Integer limit) {
+        TypedQuery<Sock> query = filteredQuery(filter, fieldForSort, asc, after);
+        if (limit != null) {
+            query.setMaxResults(limit);
+        }
+        return withShardQuantities(query.getResultList());
+    }
+
+    @Override
+    public Stream<Sock> streamWithFilters(SockFilter filter, FieldForSort fieldForSort, boolean asc, int fetchSize) {
+        Map<Long, Integer> shardQuantities = hasShards() ? shardQuantities() : Map.of();
+        return filteredQuery(filter, fieldForSort, asc, null)
+                .setHint(AvailableHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(AvailableHints.HINT_READ_ONLY, true)
+                .getResultStream()
+                .peek(entityManager::detach)
+                .peek(sock -> sock.setShardQuantity(shardQuantities.getOrDefault(sock.getId(), 0)));
+    }
+
+    @Override
+    public List<Sock> findAllByKeys(Collection<SockKey> keys) {
+        if (keys.isEmpty())
+            return new ArrayList<>();
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Sock> cq = cb.createQuery(Sock.class);
+        Root<Sock> root = cq.from(Sock.class);
+        return withShardQuantities(entityManager.createQuery(cq.where(keyPredicate(cb, root, keys))).getResultList());
+    }
+
+    @Override
+    public List<Sock> lockAllByKeys(Collection<SockKey> keys) {
+        if (keys.isEmpty())
+            return new ArrayList<>();
 
-    public List<Sock> findAllWithFilters(String color, Comparison comparison, List<Float> cottonPercentage) {
         CriteriaBuilder cb = entityManager.getCriteriaBuilder();
         CriteriaQuery<Sock> cq = cb.createQuery(Sock.class);
         Root<Sock> root = cq.from(Sock.class);
+        return entityManager.createQuery(
+                cq.where(keyPredicate(cb, root, keys))
+                        .orderBy(cb.asc(root.get("color")), cb.asc(root.get("cottonPercentage")))
+        ).setLockMode(LockModeType.PESSIMISTIC_WRITE).getResultList();
+    }
+
+    @Override
+    public SocksTotalResponse totalWithFilters(SockFilter filter, boolean groupByColor) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<Sock> root = cq.from(Sock.class);
+
+        Expression<Long> quantity = cb.coalesce(cb.sumAsLong(root.<Integer>get("quantity")), 0L);
+        Expression<Long> positions = cb.count(root);
+        cq.where(filterPredicates(cb, root, filter).toArray(Predicate[]::new));
+        Map<String, Long> shardQuantityByColor = hasShards() ? shardTotalsByColor(filter) : Map.of();
+
+        if (!groupByColor) {
+            Tuple total = entityManager.createQuery(cq.multiselect(quantity, positions)).getSingleResult();
+            return SocksTotalResponse.builder()
+                    .quantity(total.get(0, Long.class)
+                            + shardQuantityByColor.values().stream().mapToLong(Long::longValue).sum())
+                    .positions(total.get(1, Long.class))
+                    .build();
+        }
+
+        Path<String> color = root.get("color");
+        List<Tuple> totals = entityManager.createQuery(
+                cq.multiselect(color, quantity, positions).groupBy(color).orderBy(cb.asc(color))
+        ).getResultList();
+
+        Map<String, Long> quantityByColor = new LinkedHashMap<>();
+        long totalPositions = 0;
+        for (Tuple total : totals) {
+            String totalColor = total.get(0, String.class);
+            quantityByColor.put(totalColor, total.get(1, Long.class) + shardQuantityByColor.getOrDefault(totalColor, 0L));
+            totalPositions += total.get(2, Long.class);
+        }
+        return SocksTotalResponse.builder()
+                .quantity(quantityByColor.values().stream().mapToLong(Long::longValue).sum())
+                .positions(totalPositions)
+                .quantityByColor(quantityByColor)
+                .build();
+    }
+
+    @Override
+    public void upsertAll(Map<SockKey, Integer> quantities) {
+        if (quantities.isEmpty())
+            return;
+
+        StringBuilder sql = new StringBuilder("INSERT INTO sock (color, cotton_percentage, quantity) VALUES ");
+        for (int i = 0; i < quantities.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+        }
+        sql.append(" ON CONFLICT (color, cotton_percentage)")
+                .append(" DO UPDATE SET quantity = sock.quantity + excluded.quantity");
+
+        Query query = entityManager.createNativeQuery(sql.toString());
+        int position = 1;
+        for (Map.Entry<SockKey, Integer> entry : quantities.entrySet()) {
+            query.setParameter(position++, entry.getKey().color());
+            query.setParameter(position++, entry.getKey().cottonPercentage());
+            query.setParameter(position++, entry.getValue());
+        }
+        query.executeUpdate();
+    }
+
+    @Override
+    public void copyCsv(SockFilter filter, OutputStream out) {
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try {
+                pgConnection.getCopyAPI().copyOut(copyCsvSql(pgConnection, filter), out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * COPY не принимает параметры, поэтому значения фильтра подставляются литералами:
+     * цвет экранируется драйвером, процент хлопка приводится к real, как при передаче float параметром.
+     */
+    private String copyCsvSql(PGConnection connection, SockFilter filter) throws SQLException {
+        List<String> conditions = new ArrayList<>();
+        if (filter.color() != null) {
+            conditions.add("s.color = " + connection.escapeLiteral(filter.color()));
+        }
+        List<Float> cottonPercentage = filter.cottonPercentage();
+        if (cottonPercentage != null) {
+            String value = "CAST('" + cottonPercentage.get(0) + "' AS real)";
+            conditions.add(switch (filter.comparison()) {
+                case moreThan -> "s.cotton_percentage > " + value;
+                case lessThan -> "s.cotton_percentage < " + value;
+                case equal -> "s.cotton_percentage = " + value;
+                case between -> "s.cotton_percentage BETWEEN " + value
+                        + " AND CAST('" + cottonPercentage.get(1) + "' AS real)";
+            });
+        }
+
+        String from = hasShards()
+                ? "s.quantity + COALESCE(ss.quantity, 0) AS quantity FROM sock s LEFT JOIN "
+                        + "(SELECT sock_id, SUM(quantity) AS quantity FROM sock_shard GROUP BY sock_id) ss ON ss.sock_id = s.id"
+                : "s.quantity AS quantity FROM sock s";
+        return """
+                COPY (
+                    SELECT s.color AS color, CAST(s.cotton_percentage AS real) AS "cottonPercentage", %s
+                    %s
+                    ORDER BY s.id
+                ) TO STDOUT WITH (FORMAT csv, HEADER)
+                """.formatted(from, conditions.isEmpty() ? "" : "WHERE " + String.join(" AND ", conditions));
+    }
+
+    @Override
+    public boolean hasShards() {
+        Boolean present = shardsPresent;
+        if (present == null) {
+            // без включенного разбиения новые части не появляются, поэтому ответ не меняется до перезапуска
+            SocksProperties.Sharding sharding = socksProperties.getSharding();
+            present = !sharding.getSkus().isEmpty() || sharding.getAutoPromoteConcurrency() > 0
+                    || !entityManager.createNativeQuery("SELECT 1 FROM sock_shard LIMIT 1").getResultList().isEmpty();
+            shardsPresent = present;
+        }
+        return present;
+    }
+
+    /**
+     * Дописывает остаток частей к позициям. Разбитых позиций немного (только популярные),
+     * поэтому суммы читаются для всех сразу, а не по id загруженных позиций.
+     */
+    private List<Sock> withShardQuantities(List<Sock> socks) {
+        if (socks.isEmpty() || !hasShards())
+            return socks;
+        Map<Long, Integer> shardQuantities = shardQuantities();
+        socks.forEach(sock -> sock.setShardQuantity(shardQuantities.getOrDefault(sock.getId(), 0)));
+        return socks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Long, Integer> shardQuantities() {
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (Object[] row : (List<Object[]>) entityManager.createNativeQuery(
+                "SELECT sock_id, SUM(quantity) FROM sock_shard GROUP BY sock_id").getResultList()) {
+            quantities.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+        }
+        return quantities;
+    }
+
+    private Map<String, Long> shardTotalsByColor(SockFilter filter) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> cq = cb.createTupleQuery();
+        Root<SockShard> shard = cq.from(SockShard.class);
+        Root<Sock> root = cq.from(Sock.class);
+        List<Predicate> predicates = filterPredicates(cb, root, filter);
+        predicates.add(cb.equal(root.get("id"), shard.get("sockId")));
+
+        Path<String> color = root.get("color");
+        Map<String, Long> totals = new HashMap<>();
+        entityManager.createQuery(cq.multiselect(color, cb.sumAsLong(shard.<Integer>get("quantity")))
+                        .where(predicates.toArray(Predicate[]::new))
+                        .groupBy(color))
+                .getResultList()
+                .forEach(total -> totals.put(total.get(0, String.class), total.get(1, Long.class)));
+        return totals;
+    }
+
+    TypedQuery<Sock> filteredQuery(SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                                   PageCursor after) {
+        Comparison comparison = filter.cottonPercentage() == null ? null : filter.comparison();
+        TypedQuery<Sock> query = entityManager.createQuery(
+                FILTER_QUERIES.get(new QueryShape(filter.color() != null, comparison, fieldForSort, asc, after != null)),
+                Sock.class);
 
+        if (filter.color() != null)
+            query.setParameter("color", filter.color());
+        if (comparison != null) {
+            query.setParameter("cottonPercentage", filter.cottonPercentage().get(0));
+            if (comparison == Comparison.between)
+                query.setParameter("cottonPercentageTo", filter.cottonPercentage().get(1));
+        }
+        if (after != null) {
+            query.setParameter("afterId", after.id());
+            switch (fieldForSort) {
+                case COLOR -> query.setParameter("afterKey", after.key());
+                case COTTON_PERCENTAGE -> query.setParameter("afterKey", after.cottonPercentage());
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Лишние значения процента хлопка не влияют на запрос, а без процента не важен вид сравнения.
+     */
+    private SockFilter normalize(SockFilter filter) {
+        List<Float> cottonPercentage = filter.cottonPercentage();
+        if (cottonPercentage == null)
+            return new SockFilter(filter.color(), null, null);
+        return new SockFilter(filter.color(), filter.comparison(), List.copyOf(
+                cottonPercentage.subList(0, filter.comparison() == Comparison.between ? 2 : 1)));
+    }
+
+    private static Map<QueryShape, String> filterQueries() {
+        Map<QueryShape, String> queries = new HashMap<>();
+        List<Comparison> comparisons = new ArrayList<>(Arrays.asList(Comparison.values()));
+        comparisons.add(null);
+        for (boolean color : new boolean[]{true, false}) {
+            for (Comparison comparison : comparisons) {
+                for (FieldForSort fieldForSort : FieldForSort.values()) {
+                    for (boolean asc : new boolean[]{true, false}) {
+                        for (boolean after : new boolean[]{true, false}) {
+                            QueryShape shape = new QueryShape(color, comparison, fieldForSort, asc, after);
+                            queries.put(shape, shape.jpql());
+                        }
+                    }
+                }
+            }
+        }
+        return Map.copyOf(queries);
+    }
+
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Sock> root, SockFilter filter) {
         List<Predicate> predicates = new ArrayList<>();
-        if (color != null) {
-            predicates.add(cb.equal(root.get("color"), color));
+        if (filter.color() != null) {
+            predicates.add(cb.equal(root.get("color"), filter.color()));
         }
+        List<Float> cottonPercentage = filter.cottonPercentage();
         if (cottonPercentage != null) {
             predicates.add(
-                    switch (comparison) {
+                    switch (filter.comparison()) {
                         case moreThan -> cb.greaterThan(root.get("cottonPercentage"), cottonPercentage.get(0));
                         case lessThan -> cb.lessThan(root.get("cottonPercentage"), cottonPercentage.get(0));
                         case equal -> cb.equal(root.get("cottonPercentage"), cottonPercentage.get(0));
@@ -40,9 +391,65 @@ public class SockRepoImpl implements SockRepo {
                     }
             );
         }
-        return entityManager.createQuery(
-                cq.where(predicates.toArray(Predicate[]::new))
-        ).getResultList();
+        return predicates;
+    }
+
+    private Predicate keyPredicate(CriteriaBuilder cb, Root<Sock> root, Collection<SockKey> keys) {
+        return cb.or(keys.stream()
+                .map(key -> cb.and(
+                        cb.equal(root.get("color"), key.color()),
+                        cb.equal(root.get("cottonPercentage"), key.cottonPercentage())))
+                .toArray(Predicate[]::new));
     }
 
+    /**
+     * Цвета сортируются по кодам символов (ucs_basic, как "C" для UTF8), а не по collation БД:
+     * так же их сравнивает SockReadModel, и порядок не зависит от локали сервера.
+     */
+    private static final String COLOR_ORDER = "collate(s.color as ucs_basic)";
+
+    /**
+     * Форма запроса с фильтрами: comparison == null, если процент хлопка не задан.
+     */
+    private record QueryShape(boolean color, Comparison comparison, FieldForSort fieldForSort, boolean asc,
+                              boolean after) {
+
+        private String jpql() {
+            List<String> conditions = new ArrayList<>();
+            if (color)
+                conditions.add("s.color = :color");
+            if (comparison != null) {
+                conditions.add(switch (comparison) {
+                    case moreThan -> "s.cottonPercentage > :cottonPercentage";
+                    case lessThan -> "s.cottonPercentage < :cottonPercentage";
+                    case equal -> "s.cottonPercentage = :cottonPercentage";
+                    case between -> "s.cottonPercentage BETWEEN :cottonPercentage AND :cottonPercentageTo";
+                });
+            }
+            if (after) {
+                String next = asc ? " > " : " < ";
+                // сравнение кортежей: Postgres проходит индекс (поле, id) с позиции курсора, а не проверяет OR
+                conditions.add(switch (fieldForSort) {
+                    case COLOR -> "(" + COLOR_ORDER + ", s.id)" + next + "(:afterKey, :afterId)";
+                    case COTTON_PERCENTAGE -> "(s.cottonPercentage, s.id)" + next + "(:afterKey, :afterId)";
+                    case NOTHING -> "s.id" + next + ":afterId";
+                });
+            }
+
+            String direction = asc ? " ASC" : " DESC";
+            String orderBy = switch (fieldForSort) {
+                case COLOR -> COLOR_ORDER + direction + ", ";
+                case COTTON_PERCENTAGE -> "s.cottonPercentage" + direction + ", ";
+                case NOTHING -> "";
+            } + "s.id" + direction;
+
+            return "SELECT s FROM Sock s"
+                    + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                    + " ORDER BY " + orderBy;
+        }
+    }
+
+    private record CacheKey(long version, SockFilter filter, FieldForSort fieldForSort, boolean asc,
+                            PageCursor after, Integer limit) {
+    }
 }
@@ -0,0 +1,12 @@
+package org.example.sockstask.service;
+
+import org.example.sockstask.util.IdempotentResult;
+
+public interface IdempotencyService {
+
+    /**
+     * Выполняет действие и записывает ключ в той же транзакции. Повтор с тем же ключом и запросом
+     * возвращает сохраненный статус без выполнения действия.
+     */
+    IdempotentResult execute(String key, String operation, Object request, int status, Runnable action);
+}
@@ -0,0 +1,15 @@
+package org.example.sockstask.service;
+
+import org.example.sockstask.dto.ImportJobStatus;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.UUID;
+
+public interface ImportJobService {
+
+    ImportJobStatus submit(MultipartFile file);
+
+    ImportJobStatus getStatus(UUID id);
+
+    ImportJobStatus cancel(UUID id);
+}
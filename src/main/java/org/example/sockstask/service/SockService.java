@@ -1,22 +1,48 @@
 package org.example.sockstask.service;
 
+import org.example.sockstask.dto.MovementDto;
+import org.example.sockstask.dto.MovementsResponse;
 import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksFacetsResponse;
 import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.dto.SocksTotalResponse;
 import org.example.sockstask.util.Comparison;
 import org.example.sockstask.util.FieldForSort;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface SockService {
 
     SocksResponse getAllWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
-                                    FieldForSort fieldForSort, boolean asc);
+                                    FieldForSort fieldForSort, boolean asc, Integer limit, String cursor);
+
+    StreamingResponseBody streamAllWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
+                                               FieldForSort fieldForSort, boolean asc);
+
+    SocksFacetsResponse getFacets();
+
+    SseEmitter subscribeChanges(String color, Comparison comp, List<Float> cottonPercentage, String lastEventId);
+
+    StreamingResponseBody exportCsv(String color, Comparison comp, List<Float> cottonPercentage);
+
+    SocksTotalResponse getTotalWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
+                                           boolean groupByColor);
+
+    /**
+     * Остаток позиции: текущий (at = null) или на момент времени по журналу движений.
+     */
+    SockDto getStock(String color, float cottonPercentage, Instant at);
 
     void sockIncome(SockDto sock);
 
     void sockOutcome(SockDto sock);
 
+    MovementsResponse applyMovements(List<MovementDto> movements);
+
     SockDto updateSock(Long id, String color, Float cottonPercentage, Integer quantity);
 
     void uploadFromFile(MultipartFile file);
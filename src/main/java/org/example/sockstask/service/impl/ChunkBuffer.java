@@ -0,0 +1,51 @@
+package org.example.sockstask.service.impl;
+
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.util.SockKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Накопление строк файла партии: повторы позиции суммируются, набравшиеся chunk-size позиций
+ * передаются на запись вместе с числом строк.
+ */
+class ChunkBuffer {
+
+    private final int chunkSize;
+    private final ObjIntConsumer<Map<SockKey, Integer>> apply;
+    private Map<SockKey, Integer> chunk = new LinkedHashMap<>();
+    private int rows;
+
+    ChunkBuffer(int chunkSize, ObjIntConsumer<Map<SockKey, Integer>> apply) {
+        this.chunkSize = chunkSize;
+        this.apply = apply;
+    }
+
+    void add(SockKey key, int quantity) {
+        chunk.merge(key, quantity, ChunkBuffer::addExact);
+        rows++;
+        if (chunk.size() >= chunkSize)
+            flush();
+    }
+
+    void flush() {
+        if (chunk.isEmpty())
+            return;
+        apply.accept(chunk, rows);
+        chunk = new LinkedHashMap<>();
+        rows = 0;
+    }
+
+    /**
+     * Сумма количеств одной позиции. Переполнение int - ошибка данных файла, а не сервера.
+     */
+    static int addExact(int quantity, int other) {
+        try {
+            return Math.addExact(quantity, other);
+        } catch (ArithmeticException e) {
+            throw new InvalidParametersException();
+        }
+    }
+}
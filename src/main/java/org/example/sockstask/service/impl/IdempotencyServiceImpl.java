@@ -0,0 +1,137 @@
+package org.example.sockstask.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.IdempotencyKey;
+import org.example.sockstask.exception.IdempotencyKeyMismatchException;
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.repository.IdempotencyKeyRepository;
+import org.example.sockstask.service.IdempotencyService;
+import org.example.sockstask.util.IdempotentResult;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ключ вставляется в idempotency_key в той же транзакции, что и изменение склада: если действие
+ * откатилось, ключ тоже не записан и повтор выполнится заново. Параллельный запрос с тем же ключом
+ * ждет на уникальном индексе коммита первого и получает его результат.
+ * Записанные ключи после коммита кладутся в кэш, поэтому повтор обычно не доходит до БД.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    private Cache<String, StoredResult> cache;
+    private ScheduledExecutorService purger;
+
+    @PostConstruct
+    public void start() {
+        SocksProperties.Idempotency properties = socksProperties.getIdempotency();
+        cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheSize())
+                .expireAfterWrite(properties.getTtl())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "idempotency");
+
+        purger = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "idempotency-purger"));
+        long interval = properties.getPurgeInterval().toMillis();
+        purger.scheduleWithFixedDelay(this::purge, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        purger.shutdownNow();
+    }
+
+    @Override
+    public IdempotentResult execute(String key, String operation, Object request, int status, Runnable action) {
+        if (key == null) {
+            action.run();
+            return new IdempotentResult(status, false);
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH)
+            throw new InvalidParametersException();
+
+        String requestHash = hash(operation, request);
+        StoredResult cached = cache.getIfPresent(key);
+        if (cached != null)
+            return replay(cached, requestHash);
+
+        return new TransactionTemplate(transactionManager).execute(transactionStatus -> {
+            if (idempotencyKeyRepository.insertIfAbsent(key, requestHash, status, Instant.now()) == 0) {
+                IdempotencyKey stored = idempotencyKeyRepository.findById(key).orElseThrow();
+                StoredResult result = new StoredResult(stored.getRequestHash(), stored.getResponseStatus());
+                cache.put(key, result);
+                return replay(result, requestHash);
+            }
+
+            action.run();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.put(key, new StoredResult(requestHash, status));
+                }
+            });
+            return new IdempotentResult(status, false);
+        });
+    }
+
+    private IdempotentResult replay(StoredResult stored, String requestHash) {
+        if (!stored.requestHash().equals(requestHash))
+            throw new IdempotencyKeyMismatchException();
+        return new IdempotentResult(stored.status(), true);
+    }
+
+    private void purge() {
+        try {
+            Instant before = Instant.now().minus(socksProperties.getIdempotency().getTtl());
+            Integer deleted = new TransactionTemplate(transactionManager)
+                    .execute(status -> idempotencyKeyRepository.deleteCreatedBefore(before));
+            log.debug("Purged {} idempotency keys", deleted);
+        } catch (RuntimeException e) {
+            log.error("Failed to purge idempotency keys", e);
+        }
+    }
+
+    private String hash(String operation, Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(operation.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            return HexFormat.of().formatHex(digest.digest(request.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record StoredResult(String requestHash, int status) {
+    }
+}
@@ -0,0 +1,255 @@
+package org.example.sockstask.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.ImportJobStatus;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.exception.ImportJobNotFoundException;
+import org.example.sockstask.exception.InvalidCsvFileException;
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.exception.TooManyImportJobsException;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.ImportJobService;
+import org.example.sockstask.util.ImportJobState;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockFileFormat;
+import org.example.sockstask.util.SockFileReader;
+import org.example.sockstask.util.SockKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая загрузка партий из CSV или XLSX. Файл сохраняется во временный каталог, задача читает его в пуле
+ * из max-concurrent-jobs потоков и коммитит каждую часть отдельной транзакцией, поэтому при отмене
+ * или ошибке уже записанные части остаются в БД. Строки, не прошедшие {@link SockFileReader#validated}, пропускаются
+ * и считаются в rowsRejected. С spring.threads.virtual.enabled потоки пула виртуальные: пул только
+ * ограничивает число задач и очередь, а ожидание БД не занимает платформенный поток.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ImportJobServiceImpl implements ImportJobService {
+
+    private final SockRepository sockRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SockMetrics sockMetrics;
+    private final MovementLedger movementLedger;
+    private final ColorDictionary colorDictionary;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    private final Map<UUID, ImportJob> jobs = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void start() {
+        SocksProperties.ImportJobs properties = socksProperties.getImportJobs();
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = virtualThreads
+                ? new VirtualThreadTaskExecutor("import-job-").getVirtualThreadFactory()
+                : r -> new Thread(r, "import-job-" + threadNumber.incrementAndGet());
+        executor = new ThreadPoolExecutor(
+                properties.getMaxConcurrentJobs(), properties.getMaxConcurrentJobs(),
+                0, TimeUnit.MILLISECONDS,
+                properties.getQueueCapacity() == 0
+                        ? new SynchronousQueue<>()
+                        : new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                threadFactory);
+    }
+
+    @PreDestroy
+    public void stop() {
+        jobs.values().forEach(job -> job.cancelRequested = true);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public ImportJobStatus submit(MultipartFile file) {
+        evictFinished();
+
+        SockFileFormat format = SockFileFormat.of(file.getContentType(), file.getOriginalFilename());
+        Path path;
+        try {
+            path = Files.createTempFile("socks-import-", "." + format.name().toLowerCase(Locale.ROOT));
+            file.transferTo(path);
+        } catch (IOException e) {
+            throw new InvalidCsvFileException();
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID(), path, format);
+        jobs.put(job.id, job);
+        try {
+            job.future = executor.submit(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            deleteFile(path);
+            throw new TooManyImportJobsException();
+        }
+        return job.status();
+    }
+
+    @Override
+    public ImportJobStatus getStatus(UUID id) {
+        return findJob(id).status();
+    }
+
+    @Override
+    public ImportJobStatus cancel(UUID id) {
+        ImportJob job = findJob(id);
+        job.cancelRequested = true;
+        // future еще не присвоен, если submit не вернулся: задача увидит cancelRequested при первой строке
+        if (job.future != null && job.future.cancel(false)) {
+            job.finish(ImportJobState.CANCELLED, null);
+            deleteFile(job.path);
+        }
+        return job.status();
+    }
+
+    private void run(ImportJob job) {
+        if (job.cancelRequested) {
+            job.finish(ImportJobState.CANCELLED, null);
+            deleteFile(job.path);
+            return;
+        }
+        job.state = ImportJobState.RUNNING;
+        job.startedAt = Instant.now();
+        ChunkBuffer chunks = new ChunkBuffer(socksProperties.getBatch().getChunkSize(),
+                (chunk, rows) -> applyChunk(job, chunk, rows));
+        SockFileReader.RowHandler rows = SockFileReader.validated(
+                (color, cottonPercentage, quantity) ->
+                        chunks.add(new SockKey(colorDictionary.register(color), cottonPercentage), quantity),
+                job.rowsRejected::incrementAndGet);
+        SockFileReader.RowHandler handler = (color, cottonPercentage, quantity) -> {
+            if (job.cancelRequested)
+                throw new CancellationException();
+            job.rowsParsed.incrementAndGet();
+            rows.row(color, cottonPercentage, quantity);
+        };
+
+        try {
+            if (job.format == SockFileFormat.XLSX) {
+                SockFileReader.readXlsx(job.path, handler);
+            } else {
+                try (BufferedReader reader = Files.newBufferedReader(job.path)) {
+                    SockFileReader.readCsv(reader, handler);
+                }
+            }
+            chunks.flush();
+            job.finish(ImportJobState.COMPLETED, null);
+        } catch (CancellationException e) {
+            job.finish(ImportJobState.CANCELLED, null);
+        } catch (IOException | IllegalArgumentException | InvalidCsvFileException | InvalidParametersException e) {
+            job.finish(ImportJobState.FAILED, new InvalidCsvFileException().getMessage());
+        } catch (RuntimeException e) {
+            log.error("Import job {} failed", job.id, e);
+            job.finish(ImportJobState.FAILED, e.getMessage());
+        } finally {
+            deleteFile(job.path);
+        }
+    }
+
+    private void applyChunk(ImportJob job, Map<SockKey, Integer> chunk, int rows) {
+        if (chunk.isEmpty())
+            return;
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            sockRepository.upsertAll(chunk);
+            movementLedger.recordApplied(chunk, MovementSource.BATCH);
+            eventPublisher.publishEvent(new SocksChangedEvent(chunk));
+        });
+        job.rowsApplied.addAndGet(rows);
+        sockMetrics.batchChunk(rows, chunk.size());
+    }
+
+    private ImportJob findJob(UUID id) {
+        ImportJob job = jobs.get(id);
+        if (job == null)
+            throw new ImportJobNotFoundException();
+        return job;
+    }
+
+    private void evictFinished() {
+        Instant expired = Instant.now().minus(socksProperties.getImportJobs().getRetention());
+        jobs.values().removeIf(job -> job.finishedAt != null && job.finishedAt.isBefore(expired));
+    }
+
+    private void deleteFile(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete import file {}", path, e);
+        }
+    }
+
+    private static class ImportJob {
+
+        private final UUID id;
+        private final Path path;
+        private final SockFileFormat format;
+        private final AtomicLong rowsParsed = new AtomicLong();
+        private final AtomicLong rowsApplied = new AtomicLong();
+        private final AtomicLong rowsRejected = new AtomicLong();
+        private volatile ImportJobState state = ImportJobState.QUEUED;
+        private volatile boolean cancelRequested;
+        private volatile Future<?> future;
+        private volatile Instant startedAt;
+        private volatile Instant finishedAt;
+        private volatile String error;
+
+        private ImportJob(UUID id, Path path, SockFileFormat format) {
+            this.id = id;
+            this.path = path;
+            this.format = format;
+        }
+
+        private void finish(ImportJobState state, String error) {
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.state = state;
+        }
+
+        private ImportJobStatus status() {
+            Instant started = startedAt;
+            Instant finished = finishedAt;
+            double rowsPerSecond = 0;
+            if (started != null) {
+                long millis = Duration.between(started, finished == null ? Instant.now() : finished).toMillis();
+                rowsPerSecond = millis == 0 ? 0 : rowsParsed.get() * 1000.0 / millis;
+            }
+            return ImportJobStatus.builder()
+                    .id(id)
+                    .state(state)
+                    .rowsParsed(rowsParsed.get())
+                    .rowsApplied(rowsApplied.get())
+                    .rowsRejected(rowsRejected.get())
+                    .rowsPerSecond(rowsPerSecond)
+                    .startedAt(started)
+                    .finishedAt(finished)
+                    .error(error)
+                    .build();
+        }
+    }
+}
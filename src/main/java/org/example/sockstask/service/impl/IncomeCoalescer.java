@@ -0,0 +1,300 @@
+package org.example.sockstask.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.IncomeDeadLetter;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.repository.IncomeDeadLetterRepository;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockKey;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Объединение частых приходов по одной позиции: приращения копятся в памяти и раз в flush-interval
+ * (или после max-events запросов) записываются одним upsert на всю пачку.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IncomeCoalescer {
+
+    private final SockRepository sockRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+    private final MovementLedger movementLedger;
+    private final IncomeDeadLetterRepository incomeDeadLetterRepository;
+
+    private volatile Batch current = new Batch();
+    private ScheduledExecutorService flusher;
+    private DistributionSummary flushSize;
+    private DistributionSummary flushEvents;
+    private Timer flushLag;
+    private Counter deadLettered;
+    private Counter dropped;
+
+    public boolean isEnabled() {
+        return socksProperties.getCoalescing().isEnabled();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!isEnabled())
+            return;
+
+        flushSize = DistributionSummary.builder("socks.coalescing.flush.size")
+                .description("Позиций в одной записи пачки")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flushEvents = DistributionSummary.builder("socks.coalescing.flush.events")
+                .description("Запросов прихода в одной записи пачки")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flushLag = Timer.builder("socks.coalescing.flush.lag")
+                .description("Время от первого прихода в пачке до коммита пачки")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        deadLettered = Counter.builder("socks.coalescing.dead-lettered")
+                .description("Приращений, не записанных в sock и сохраненных в sock_income_dead_letter")
+                .register(meterRegistry);
+        dropped = Counter.builder("socks.coalescing.dropped")
+                .description("Приращений, которые не удалось сохранить даже в sock_income_dead_letter")
+                .register(meterRegistry);
+        meterRegistry.gauge("socks.coalescing.pending", this, coalescer -> coalescer.current.events.get());
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "income-coalescer"));
+        long interval = socksProperties.getCoalescing().getFlushInterval().toMillis();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null)
+            return;
+
+        flusher.shutdown();
+        flusher.awaitTermination(socksProperties.getCoalescing().getAwaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        flush();
+    }
+
+    /**
+     * Добавляет приход в текущую пачку. В режиме await-flush ждет записи пачки в БД.
+     *
+     * @throws InvalidParametersException если сумма прихода позиции в пачке не помещается в int
+     */
+    public void add(SockKey key, int quantity) {
+        Batch batch = current;
+        int events;
+        while ((events = batch.add(key, quantity)) == 0) {
+            batch = current;
+        }
+        if (events < 0)
+            throw new InvalidParametersException();
+
+        if (events == socksProperties.getCoalescing().getMaxEvents())
+            flusher.execute(this::flush);
+
+        if (awaitsFlush())
+            awaitFlush(batch);
+    }
+
+    /**
+     * С read-your-writes ответ ждет записи всегда: фильтр отмечает запись в сессии по окончании запроса,
+     * и пачка, закоммиченная позже отметки, могла бы не попасть в чтение с реплики.
+     */
+    private boolean awaitsFlush() {
+        SocksProperties.Replica replica = socksProperties.getReplica();
+        return socksProperties.getCoalescing().isAwaitFlush() || replica.isEnabled() && replica.isReadYourWrites();
+    }
+
+    private void awaitFlush(Batch batch) {
+        try {
+            batch.flushed.get(socksProperties.getCoalescing().getAwaitTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for income flush", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IllegalStateException("Income was not flushed", e);
+        }
+    }
+
+    synchronized void flush() {
+        Batch batch = current;
+        if (batch.events.get() == 0)
+            return;
+
+        current = new Batch();
+        try {
+            Map<SockKey, Integer> deltas = batch.close((key, delta) -> deadLetter(key, delta, "Quantity overflow"));
+            try {
+                apply(deltas);
+                batch.flushed.complete(null);
+
+                flushSize.record(deltas.size());
+                flushEvents.record(batch.events.get());
+                flushLag.record(System.nanoTime() - batch.firstEventAt, TimeUnit.NANOSECONDS);
+            } catch (RuntimeException e) {
+                log.error("Failed to flush {} coalesced incomes", batch.events.get(), e);
+                batch.flushed.completeExceptionally(e);
+                if (!awaitsFlush())
+                    retry(deltas, e);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to flush coalesced incomes", e);
+            batch.flushed.completeExceptionally(e);
+        }
+    }
+
+    private void apply(Map<SockKey, Integer> deltas) {
+        if (deltas.isEmpty())
+            return;
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        int chunkSize = socksProperties.getBatch().getChunkSize();
+        transaction.executeWithoutResult(status -> {
+            Map<SockKey, Integer> chunk = new LinkedHashMap<>();
+            for (Map.Entry<SockKey, Integer> delta : deltas.entrySet()) {
+                chunk.put(delta.getKey(), delta.getValue());
+                if (chunk.size() >= chunkSize) {
+                    sockRepository.upsertAll(chunk);
+                    movementLedger.recordApplied(chunk, MovementSource.INCOME);
+                    chunk = new LinkedHashMap<>();
+                }
+            }
+            sockRepository.upsertAll(chunk);
+            movementLedger.recordApplied(chunk, MovementSource.INCOME);
+            eventPublisher.publishEvent(new SocksChangedEvent(deltas));
+        });
+    }
+
+    /**
+     * Клиенты уже получили ответ: при временной ошибке (нет соединения, таймаут, блокировка) пачка целиком
+     * возвращается в очередь, иначе позиции записываются по одной, а те, что не записываются сами по себе,
+     * сохраняются в sock_income_dead_letter, чтобы одна плохая позиция не останавливала все остальные.
+     * Приращение теряется, только если не записалось и туда: это видно по socks.coalescing.dropped.
+     */
+    private void retry(Map<SockKey, Integer> deltas, RuntimeException failure) {
+        if (isTransient(failure)) {
+            deltas.forEach(this::requeue);
+            return;
+        }
+        deltas.forEach((key, delta) -> {
+            try {
+                apply(Map.of(key, delta));
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    requeue(key, delta);
+                } else {
+                    deadLetter(key, delta, String.valueOf(e.getMessage()));
+                }
+            }
+        });
+    }
+
+    private void requeue(SockKey key, int delta) {
+        try {
+            add(key, delta);
+        } catch (InvalidParametersException e) {
+            deadLetter(key, delta, "Quantity overflow");
+        }
+    }
+
+    private boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException
+                || e instanceof CannotCreateTransactionException;
+    }
+
+    private void deadLetter(SockKey key, long delta, String error) {
+        log.error("Moving coalesced income of {} for {} to dead letters: {}", delta, key, error);
+        try {
+            incomeDeadLetterRepository.save(
+                    new IncomeDeadLetter(null, key.color(), key.cottonPercentage(), delta, error, null));
+            deadLettered.increment();
+        } catch (RuntimeException e) {
+            log.error("Dropping coalesced income of {} for {}", delta, key, e);
+            dropped.increment();
+        }
+    }
+
+    private static class Batch {
+
+        private final Map<SockKey, LongAdder> deltas = new ConcurrentHashMap<>();
+        private final AtomicInteger events = new AtomicInteger();
+        private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private volatile long firstEventAt;
+        private boolean closed;
+
+        /**
+         * @return порядковый номер запроса в пачке, 0, если пачка уже закрыта на запись,
+         * или -1, если сумма позиции переполнила бы int
+         */
+        private int add(SockKey key, int quantity) {
+            lock.readLock().lock();
+            try {
+                if (closed)
+                    return 0;
+                LongAdder sum = deltas.computeIfAbsent(key, k -> new LongAdder());
+                sum.add(quantity);
+                if (sum.sum() > Integer.MAX_VALUE) {
+                    sum.add(-quantity);
+                    return -1;
+                }
+                int number = events.incrementAndGet();
+                if (number == 1)
+                    firstEventAt = System.nanoTime();
+                return number;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Закрывает пачку на запись. Суммы, не помещающиеся в int, в пачку не попадают и передаются в overflow.
+         */
+        private Map<SockKey, Integer> close(ObjLongConsumer<SockKey> overflow) {
+            lock.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            Map<SockKey, Integer> sums = new LinkedHashMap<>();
+            deltas.forEach((key, sum) -> {
+                long value = sum.sum();
+                if (value > Integer.MAX_VALUE)
+                    overflow.accept(key, value);
+                else
+                    sums.put(key, (int) value);
+            });
+            return sums;
+        }
+    }
+}
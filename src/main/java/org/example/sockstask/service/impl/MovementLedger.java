@@ -0,0 +1,162 @@
+package org.example.sockstask.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.repository.SockMovementRepository;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockKey;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Журнал движений sock_movement. Каждое изменение склада дописывается в него в той же транзакции,
+ * поэтому по журналу можно получить остаток на любой момент. sock.quantity - снимок, в который свернуты
+ * движения с compacted = true. В режиме deferred-income приход пишется только в журнал, а в снимок
+ * его переносит фоновое сжатие. Чтения по снимку перед запросом вызывают {@link #catchUp()}.
+ * Свернутые движения старше retention раз в purge-interval заменяются одной строкой OPENING на позицию.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MovementLedger {
+
+    private final SockMovementRepository sockMovementRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicLong deferred = new AtomicLong();
+    private volatile long compactedUpTo;
+    private ScheduledExecutorService compactor;
+    private ScheduledExecutorService purger;
+
+    public boolean isDeferredIncome() {
+        return socksProperties.getLedger().isDeferredIncome();
+    }
+
+    /**
+     * Фоновое сжатие нужно только в режиме deferred-income: иначе все движения пишутся уже свернутыми.
+     */
+    @PostConstruct
+    public void start() {
+        purger = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ledger-purger"));
+        long purgeInterval = socksProperties.getLedger().getPurgeInterval().toMillis();
+        purger.scheduleWithFixedDelay(this::purge, purgeInterval, purgeInterval, TimeUnit.MILLISECONDS);
+
+        if (!isDeferredIncome())
+            return;
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "ledger-compactor"));
+        long interval = socksProperties.getLedger().getCompactionInterval().toMillis();
+        compactor.scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (purger != null)
+            purger.shutdownNow();
+        if (compactor == null)
+            return;
+        compactor.shutdown();
+        compactor.awaitTermination(socksProperties.getLedger().getCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+        compact();
+    }
+
+    /**
+     * Записывает изменения, уже примененные к sock в текущей транзакции.
+     */
+    public void recordApplied(Map<SockKey, Integer> deltas, MovementSource source) {
+        sockMovementRepository.appendAll(deltas, source, true);
+    }
+
+    /**
+     * Записывает изменения только в журнал, в остаток их перенесет сжатие.
+     */
+    public void recordDeferred(Map<SockKey, Integer> deltas, MovementSource source) {
+        sockMovementRepository.appendAll(deltas, source, false);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                deferred.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Сворачивает отложенные приходы этого экземпляра, закоммиченные до вызова, чтобы чтение по sock
+     * (список, сумма, выгрузка, фасеты, копия в памяти) их видело. Если сворачивать нечего, к БД не обращается.
+     * Приходы через другие экземпляры видны после их фонового сжатия, то есть с задержкой до compaction-interval.
+     */
+    public void catchUp() {
+        if (isDeferredIncome() && deferred.get() > compactedUpTo)
+            compact();
+    }
+
+    /**
+     * Сворачивает отложенные движения позиций в текущей транзакции, чтобы проверка и изменение
+     * остатка шли по актуальному sock.quantity.
+     *
+     * @return свернутые изменения по позициям
+     */
+    public Map<SockKey, Integer> foldPending(Collection<SockKey> keys) {
+        if (!isDeferredIncome())
+            return Map.of();
+
+        Map<SockKey, Integer> folded = sockMovementRepository.foldByKeys(keys);
+        if (!folded.isEmpty())
+            eventPublisher.publishEvent(new SocksChangedEvent(folded));
+        return folded;
+    }
+
+    /**
+     * Отдельная транзакция: catchUp вызывается и из транзакции чтения.
+     */
+    private synchronized void compact() {
+        long seen = deferred.get();
+        int batchSize = socksProperties.getLedger().getCompactionBatchSize();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        try {
+            Map<SockKey, Integer> folded;
+            do {
+                folded = transaction.execute(status -> {
+                    Map<SockKey, Integer> sums = sockMovementRepository.foldOldest(batchSize);
+                    if (!sums.isEmpty())
+                        eventPublisher.publishEvent(new SocksChangedEvent(sums));
+                    return sums;
+                });
+            } while (!folded.isEmpty() && !Thread.currentThread().isInterrupted());
+            if (folded.isEmpty())
+                compactedUpTo = Math.max(compactedUpTo, seen);
+        } catch (RuntimeException e) {
+            log.error("Failed to compact stock movements", e);
+        }
+    }
+
+    private void purge() {
+        Instant before = Instant.now().minus(socksProperties.getLedger().getRetention());
+        try {
+            Integer purged = new TransactionTemplate(transactionManager)
+                    .execute(status -> sockMovementRepository.rollUpCompactedBefore(before));
+            log.debug("Rolled up {} stock movements created before {}", purged, before);
+        } catch (RuntimeException e) {
+            log.error("Failed to purge stock movements", e);
+        }
+    }
+}
@@ -1,28 +1,58 @@
 package org.example.sockstask.service.impl;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.cache.SockFacets;
+import org.example.sockstask.cache.SockReadModel;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.MovementDto;
+import org.example.sockstask.dto.MovementsResponse;
+import org.example.sockstask.dto.RejectedMovement;
 import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksFacetsResponse;
 import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.dto.SocksTotalResponse;
 import org.example.sockstask.entity.Sock;
+import org.example.sockstask.event.SockChangeStream;
+import org.example.sockstask.event.SocksChangedEvent;
 import org.example.sockstask.exception.*;
 import org.example.sockstask.mapper.SockMapper;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockMovementRepository;
 import org.example.sockstask.repository.SockRepository;
 import org.example.sockstask.service.SockService;
 import org.example.sockstask.util.Comparison;
 import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.PageCursor;
+import org.example.sockstask.util.SockFileFormat;
+import org.example.sockstask.util.SockFileReader;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.List;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -30,105 +60,347 @@ public class SockServiceImpl implements SockService {
 
     private final SockRepository sockRepository;
     private final SockMapper sockMapper;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+    private final SockReadModel sockReadModel;
+    private final IncomeCoalescer incomeCoalescer;
+    private final ApplicationEventPublisher eventPublisher;
+    private final SockMetrics sockMetrics;
+    private final MovementLedger movementLedger;
+    private final SockMovementRepository sockMovementRepository;
+    private final SockShards sockShards;
+    private final ColorDictionary colorDictionary;
+    private final SockFacets sockFacets;
+    private final SockChangeStream sockChangeStream;
 
     @Override
-    @Transactional(readOnly = true)
     public SocksResponse getAllWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
-                                           FieldForSort fieldForSort, boolean asc) {
+                                           FieldForSort fieldForSort, boolean asc, Integer limit, String cursor) {
 
-        if (cottonPercentage != null) {
-            if ((cottonPercentage.size() == 1 && comp.equals(Comparison.between)) ||
-                    (cottonPercentage.size() == 2 && !comp.equals(Comparison.between)) ||
-                    cottonPercentage.size() > 2 )
-                throw new InvalidParametersException();
+        validateCottonPercentage(comp, cottonPercentage);
 
-            if (cottonPercentage.size() == 2)
-                cottonPercentage.sort(Comparator.naturalOrder());
-        }
+        if (limit != null && (limit <= 0 || limit > socksProperties.getPagination().getMaxLimit()))
+            throw new InvalidParametersException();
 
-        List<Sock> socks = sockRepository.findAllWithFilters(color, comp, cottonPercentage);
+        PageCursor after = cursor == null ? null : PageCursor.decode(cursor, fieldForSort, asc);
 
-        if (socks.isEmpty())
-            throw new SockNotFoundException();
-
-        Comparator<Sock> comparator = switch (fieldForSort) {
-            case COLOR -> Comparator.comparing(Sock::getColor);
-            case COTTON_PERCENTAGE -> Comparator.comparing(Sock::getCottonPercentage);
-            case NOTHING -> Comparator.comparing(Sock::getId);
-        };
+        SockFilter filter = new SockFilter(colorDictionary.find(color), comp, cottonPercentage);
+        Integer fetchLimit = limit == null ? null : limit + 1;
+        movementLedger.catchUp();
+        List<Sock> socks;
+        if (sockReadModel.isReady()) {
+            socks = sockReadModel.findAllWithFilters(filter, fieldForSort, asc, after, fetchLimit);
+        } else {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setReadOnly(true);
+            socks = transaction.execute(status ->
+                    sockRepository.findAllWithFilters(filter, fieldForSort, asc, after, fetchLimit));
+        }
 
-        if (!asc)
-            comparator = comparator.reversed();
+        if (socks.isEmpty() && after == null)
+            throw new SockNotFoundException();
 
-        socks.sort(comparator);
+        String nextCursor = null;
+        if (limit != null && socks.size() > limit) {
+            socks = socks.subList(0, limit);
+            nextCursor = PageCursor.after(socks.get(limit - 1), fieldForSort, asc).encode();
+        }
 
         return SocksResponse.builder()
                 .socks(socks.stream().map(sockMapper::toSockDto).toList())
+                .nextCursor(nextCursor)
                 .build();
     }
 
     @Override
-    @Transactional
+    public StreamingResponseBody streamAllWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
+                                                      FieldForSort fieldForSort, boolean asc) {
+        validateCottonPercentage(comp, cottonPercentage);
+        SockFilter filter = new SockFilter(colorDictionary.find(color), comp, cottonPercentage);
+        int fetchSize = socksProperties.getStream().getFetchSize();
+        movementLedger.catchUp();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        return out -> transaction.executeWithoutResult(status -> {
+            try (Stream<Sock> socks = sockRepository.streamWithFilters(filter, fieldForSort, asc, fetchSize);
+                 JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+                // строки разделяет '\n', без этого Jackson ставит пробел перед каждым следующим объектом
+                generator.setRootValueSeparator(null);
+                for (Sock sock : (Iterable<Sock>) socks::iterator) {
+                    generator.writeObject(sockMapper.toSockDto(sock));
+                    generator.writeRaw('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public SocksFacetsResponse getFacets() {
+        movementLedger.catchUp();
+        return sockFacets.get();
+    }
+
+    @Override
+    public SseEmitter subscribeChanges(String color, Comparison comp, List<Float> cottonPercentage,
+                                       String lastEventId) {
+        validateCottonPercentage(comp, cottonPercentage);
+        return sockChangeStream.subscribe(new SockFilter(colorDictionary.find(color), comp, cottonPercentage),
+                lastEventId);
+    }
+
+    @Override
+    public StreamingResponseBody exportCsv(String color, Comparison comp, List<Float> cottonPercentage) {
+        validateCottonPercentage(comp, cottonPercentage);
+        SockFilter filter = new SockFilter(colorDictionary.find(color), comp, cottonPercentage);
+        movementLedger.catchUp();
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+
+        return out -> transaction.executeWithoutResult(status -> sockRepository.copyCsv(filter, out));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SocksTotalResponse getTotalWithFilters(String color, Comparison comp, List<Float> cottonPercentage,
+                                                  boolean groupByColor) {
+        validateCottonPercentage(comp, cottonPercentage);
+        SockFilter filter = new SockFilter(colorDictionary.find(color), comp, cottonPercentage);
+        movementLedger.catchUp();
+        return sockRepository.totalWithFilters(filter, groupByColor);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public SockDto getStock(String color, float cottonPercentage, Instant at) {
+        color = colorDictionary.find(color);
+        Long quantity = at == null
+                ? sockMovementRepository.currentStock(color, cottonPercentage)
+                : sockMovementRepository.stockAt(color, cottonPercentage, at);
+        if (quantity == null)
+            throw new SockNotFoundException();
+        return new SockDto(color, cottonPercentage, Math.toIntExact(quantity));
+    }
+
+    @Override
     public void sockIncome(SockDto sock) {
-        sockRepository.findByColorAndCottonPercentage(sock.color(), sock.cottonPercentage())
-                .ifPresentOrElse(
-                        s -> s.income(sock.quantity()),
-                        () -> sockRepository.save(sockMapper.toSock(sock))
-                );
+        SockKey key = new SockKey(colorDictionary.register(sock.color()), sock.cottonPercentage());
+        if (incomeCoalescer.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            incomeCoalescer.add(key, sock.quantity());
+        } else {
+            Map<SockKey, Integer> delta = Map.of(key, sock.quantity());
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                if (movementLedger.isDeferredIncome()) {
+                    movementLedger.recordDeferred(delta, MovementSource.INCOME);
+                } else {
+                    if (!sockShards.add(key, sock.quantity())) {
+                        sockShards.enter(key);
+                        try {
+                            sockRepository.addQuantity(key.color(), key.cottonPercentage(), sock.quantity());
+                        } finally {
+                            sockShards.exit(key);
+                        }
+                    }
+                    movementLedger.recordApplied(delta, MovementSource.INCOME);
+                    eventPublisher.publishEvent(new SocksChangedEvent(delta));
+                }
+            });
+        }
+        sockMetrics.income(sock.quantity());
     }
 
     @Override
     @Transactional
     public void sockOutcome(SockDto sock) {
-        Sock socks = sockRepository.findByColorAndCottonPercentage(sock.color(), sock.cottonPercentage())
-                .orElseThrow(SockNotFoundException::new);
-
-        if (socks.getQuantity() < sock.quantity())
+        SockKey key = new SockKey(colorDictionary.find(sock.color()), sock.cottonPercentage());
+        movementLedger.foldPending(List.of(key));
+        boolean taken;
+        if (sockShards.isSharded(key)) {
+            taken = sockShards.take(key, sock.quantity());
+        } else {
+            sockShards.enter(key);
+            try {
+                taken = sockRepository.subtractQuantity(key.color(), key.cottonPercentage(), sock.quantity()) > 0;
+            } finally {
+                sockShards.exit(key);
+            }
+            // позицию могли разбить другой экземпляр или фоновое разбиение уже после проверки isSharded
+            if (!taken)
+                taken = sockShards.take(key, sock.quantity());
+        }
+        if (!taken) {
+            if (!sockRepository.existsByColorAndCottonPercentage(key.color(), key.cottonPercentage()))
+                throw new SockNotFoundException();
+            sockMetrics.outcomeRejected();
             throw new NotEnoughSocksException();
+        }
+        Map<SockKey, Integer> delta = Map.of(key, -sock.quantity());
+        movementLedger.recordApplied(delta, MovementSource.OUTCOME);
+        eventPublisher.publishEvent(new SocksChangedEvent(delta));
+        sockMetrics.outcome(sock.quantity());
+    }
+
+    @Override
+    @Transactional
+    public MovementsResponse applyMovements(List<MovementDto> movements) {
+        Map<SockKey, Integer> deltas = new TreeMap<>(
+                Comparator.comparing(SockKey::color).thenComparing(SockKey::cottonPercentage));
+        Map<SockKey, List<Integer>> lines = new HashMap<>();
+        Set<SockKey> overflowed = new HashSet<>();
+        for (int line = 0; line < movements.size(); line++) {
+            MovementDto movement = movements.get(line);
+            SockKey key = new SockKey(colorDictionary.register(movement.color()), movement.cottonPercentage());
+            try {
+                deltas.merge(key, movement.quantity(), Math::addExact);
+            } catch (ArithmeticException e) {
+                overflowed.add(key);
+            }
+            lines.computeIfAbsent(key, k -> new ArrayList<>()).add(line);
+        }
+        deltas.entrySet().removeIf(delta -> delta.getValue() == 0 && !overflowed.contains(delta.getKey()));
+        movementLedger.foldPending(deltas.keySet());
+
+        Map<SockKey, Integer> stock = new HashMap<>();
+        sockRepository.lockAllByKeys(deltas.keySet()).forEach(sock -> {
+            sockShards.collect(sock);
+            stock.put(new SockKey(sock.getColor(), sock.getCottonPercentage()), sock.getQuantity());
+        });
+
+        List<RejectedMovement> rejected = new ArrayList<>();
+        deltas.forEach((key, delta) -> {
+            Integer quantity = stock.get(key);
+            long result = (quantity == null ? 0L : quantity) + delta;
+            String reason = overflowed.contains(key) || result > Integer.MAX_VALUE ? "Quantity overflow"
+                    : delta > 0 ? null
+                    : quantity == null ? "Sock not found"
+                    : result < 0 ? "Not enough socks"
+                    : null;
+            if (reason != null)
+                lines.get(key).forEach(line -> rejected.add(new RejectedMovement(line, movements.get(line), reason)));
+        });
+        if (!rejected.isEmpty()) {
+            rejected.sort(Comparator.comparingInt(RejectedMovement::line));
+            throw new MovementsRejectedException(rejected);
+        }
 
-        socks.outcome(sock.quantity());
+        sockRepository.upsertAll(deltas);
+        movementLedger.recordApplied(deltas, MovementSource.MOVEMENT);
+        eventPublisher.publishEvent(new SocksChangedEvent(deltas));
+        deltas.values().forEach(delta -> {
+            if (delta > 0)
+                sockMetrics.income(delta);
+            else
+                sockMetrics.outcome(-delta);
+        });
+        return MovementsResponse.builder()
+                .appliedPositions(deltas.size())
+                .rejected(List.of())
+                .build();
     }
 
     @Override
     @Transactional
     public SockDto updateSock(Long id, String color, Float cottonPercentage, Integer quantity) {
-        Sock sock = sockRepository.findById(id).orElseThrow(SockNotFoundException::new);
+        Sock sock = sockRepository.lockById(id).orElseThrow(SockNotFoundException::new);
+        SockKey oldKey = new SockKey(sock.getColor(), sock.getCottonPercentage());
+        sockShards.collect(sock);
+        Integer folded = movementLedger.foldPending(List.of(oldKey)).get(oldKey);
+        if (folded != null)
+            sock.setQuantity(sock.getQuantity() + folded);
+        int oldQuantity = sock.getQuantity();
+        String newColor = color == null ? sock.getColor() : colorDictionary.register(color);
+        float newCottonPercentage = cottonPercentage == null ? sock.getCottonPercentage() : cottonPercentage;
+        if (!oldKey.equals(new SockKey(newColor, newCottonPercentage))
+                && sockRepository.findByColorAndCottonPercentage(newColor, newCottonPercentage).isPresent())
+            throw new SockAlreadyExistsException();
         if (color != null)
-            sock.setColor(color);
+            sock.setColor(newColor);
         if (cottonPercentage != null)
             sock.setCottonPercentage(cottonPercentage);
         if (quantity != null)
             sock.setQuantity(quantity);
-        return sockMapper.toSockDto(sock);
+        try {
+            // позицию с тем же ключом могли создать после проверки: ошибка unique-индекса проявится здесь, а не при коммите
+            sockRepository.flush();
+        } catch (DataIntegrityViolationException e) {
+            throw new SockAlreadyExistsException();
+        }
+
+        Map<SockKey, Integer> deltas = new LinkedHashMap<>();
+        deltas.put(oldKey, -oldQuantity);
+        deltas.merge(new SockKey(sock.getColor(), sock.getCottonPercentage()), sock.getQuantity(), Integer::sum);
+        deltas.values().removeIf(delta -> delta == 0);
+        movementLedger.recordApplied(deltas, MovementSource.UPDATE);
+        eventPublisher.publishEvent(new SocksChangedEvent(deltas));
+        // lockById не заполняет shardQuantity, остаток частей collect уже перенес в quantity
+        return new SockDto(sock.getColor(), sock.getCottonPercentage(), sock.getQuantity());
     }
 
     @Override
     @Transactional
     public void uploadFromFile(MultipartFile file) {
-        List<Sock> socks = new ArrayList<>();
-        CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
-                .setDelimiter(',')
-                .setHeader()
-                .build();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()));
-             CSVParser csvParser = new CSVParser(reader, csvFormat)) {
-            for (CSVRecord csvRecord : csvParser) {
-                Sock sock = new Sock();
-                sock.setColor(csvRecord.get("color"));
-                sock.setCottonPercentage(Float.parseFloat(csvRecord.get("cottonPercentage")));
-                sock.setQuantity(Integer.parseInt(csvRecord.get("quantity")));
-
-                sockRepository.findByColorAndCottonPercentage(sock.getColor(), sock.getCottonPercentage())
-                        .ifPresentOrElse(
-                                s -> s.income(sock.getQuantity()),
-                                () -> socks.add(sock)
-                        );
+        AtomicInteger applied = new AtomicInteger();
+        AtomicReference<Map<SockKey, Integer>> firstChunk = new AtomicReference<>(Map.of());
+        ChunkBuffer chunks = new ChunkBuffer(socksProperties.getBatch().getChunkSize(), (chunk, rows) -> {
+            applyChunk(chunk, rows);
+            firstChunk.set(applied.incrementAndGet() == 1 ? chunk : Map.of());
+        });
+        SockFileReader.RowHandler handler = SockFileReader.validated(
+                (color, cottonPercentage, quantity) ->
+                        chunks.add(new SockKey(colorDictionary.register(color), cottonPercentage), quantity),
+                () -> {
+                    throw new InvalidCsvFileException();
+                });
+        try {
+            if (SockFileFormat.of(file.getContentType(), file.getOriginalFilename()) == SockFileFormat.XLSX) {
+                Path path = Files.createTempFile("socks-upload-", ".xlsx");
+                try {
+                    file.transferTo(path);
+                    SockFileReader.readXlsx(path, handler);
+                } finally {
+                    Files.deleteIfExists(path);
+                }
+            } else {
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(file.getInputStream()))) {
+                    SockFileReader.readCsv(reader, handler);
+                }
             }
-
         } catch (IOException | IllegalArgumentException e) {
             throw new InvalidCsvFileException();
         }
 
-        sockRepository.saveAll(socks);
+        chunks.flush();
+        // Слушатели держат события до коммита: позиции передаются, только если загрузка уместилась
+        // в одну часть, иначе память росла бы с размером файла.
+        if (applied.get() == 1)
+            eventPublisher.publishEvent(new SocksChangedEvent(firstChunk.get()));
+        else if (applied.get() > 1)
+            eventPublisher.publishEvent(SocksChangedEvent.all());
+    }
+
+    private void applyChunk(Map<SockKey, Integer> chunk, int rows) {
+        if (chunk.isEmpty())
+            return;
+        sockRepository.upsertAll(chunk);
+        movementLedger.recordApplied(chunk, MovementSource.BATCH);
+        sockMetrics.batchChunk(rows, chunk.size());
+    }
+
+    private void validateCottonPercentage(Comparison comp, List<Float> cottonPercentage) {
+        if (cottonPercentage != null) {
+            if ((cottonPercentage.size() == 1 && comp.equals(Comparison.between)) ||
+                    (cottonPercentage.size() == 2 && !comp.equals(Comparison.between)) ||
+                    cottonPercentage.size() > 2 )
+                throw new InvalidParametersException();
+
+            if (cottonPercentage.size() == 2)
+                cottonPercentage.sort(Comparator.naturalOrder());
+        }
     }
 }
@@ -0,0 +1,196 @@
+package org.example.sockstask.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.entity.SockShard;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.repository.SockShardRepository;
+import org.example.sockstask.util.SockKey;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Разбиение остатка популярных позиций на части в sock_shard, чтобы приход и отпуск блокировали
+ * одну из частей, а не общую строку sock. Полный остаток разбитой позиции - sock.quantity плюс сумма частей.
+ * Позиция разбивается при старте по настройке skus или автоматически, когда ее строку одновременно
+ * ждут auto-promote-concurrency запросов этого экземпляра.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SockShards {
+
+    private final SockShardRepository sockShardRepository;
+    private final SockRepository sockRepository;
+    private final SocksProperties socksProperties;
+    private final PlatformTransactionManager transactionManager;
+    private final SockMetrics sockMetrics;
+    private final ColorDictionary colorDictionary;
+
+    private final Map<SockKey, Integer> shardCounts = new ConcurrentHashMap<>();
+    private final Map<SockKey, Integer> inFlight = new ConcurrentHashMap<>();
+    private final Set<SockKey> promoting = ConcurrentHashMap.newKeySet();
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(r -> new Thread(r, "sock-shard-promoter"));
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                sockShardRepository.countShards().forEach(row -> shardCounts.put(
+                        new SockKey((String) row[0], ((Number) row[1]).floatValue()), ((Number) row[2]).intValue())));
+
+        for (SocksProperties.Sharding.Sku sku : socksProperties.getSharding().getSkus()) {
+            SockKey key = new SockKey(colorDictionary.register(sku.getColor()), sku.getCottonPercentage());
+            if (shardCounts.getOrDefault(key, 0) < sku.getShards())
+                promote(key, sku.getShards());
+        }
+        log.info("Loaded {} sharded socks", shardCounts.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        promoter.shutdownNow();
+    }
+
+    public boolean isSharded(SockKey key) {
+        return shardCounts.containsKey(key);
+    }
+
+    /**
+     * Отмечает запрос, ожидающий строку позиции. Если таких запросов набралось auto-promote-concurrency,
+     * позиция разбивается в фоне.
+     */
+    public void enter(SockKey key) {
+        int threshold = socksProperties.getSharding().getAutoPromoteConcurrency();
+        if (threshold == 0)
+            return;
+
+        int waiting = inFlight.merge(key, 1, Integer::sum);
+        if (waiting >= threshold && !isSharded(key) && promoting.add(key)) {
+            promoter.execute(() -> {
+                try {
+                    promote(key, socksProperties.getSharding().getAutoShards());
+                } finally {
+                    promoting.remove(key);
+                }
+            });
+        }
+    }
+
+    public void exit(SockKey key) {
+        if (socksProperties.getSharding().getAutoPromoteConcurrency() == 0)
+            return;
+
+        inFlight.computeIfPresent(key, (k, waiting) -> waiting == 1 ? null : waiting - 1);
+    }
+
+    /**
+     * Приход в случайную часть в текущей транзакции.
+     *
+     * @return false, если позиция не разбита
+     */
+    public boolean add(SockKey key, int quantity) {
+        Integer shards = shardCounts.get(key);
+        if (shards == null)
+            return false;
+
+        int shard = ThreadLocalRandom.current().nextInt(shards);
+        return sockShardRepository.addToShard(key.color(), key.cottonPercentage(), shard, quantity) > 0;
+    }
+
+    /**
+     * Отпуск из части, в которой хватает остатка. Если такой свободной части нет, блокирует позицию
+     * целиком, собирает остаток из всех частей и заново делит его поровну. Работает и для позиции,
+     * про разбиение которой этот экземпляр еще не знает: найденные части запоминаются.
+     *
+     * @return false, если позиции нет или суммарного остатка не хватает
+     */
+    public boolean take(SockKey key, int quantity) {
+        if (sockShardRepository.takeFromAnyShard(key.color(), key.cottonPercentage(), quantity) > 0)
+            return true;
+
+        List<Sock> socks = sockRepository.lockAllByKeys(List.of(key));
+        if (socks.isEmpty())
+            return false;
+
+        Sock sock = socks.get(0);
+        List<SockShard> shards = sockShardRepository.findAllBySockIdOrderByShard(sock.getId());
+        int total = sock.getQuantity() + shards.stream().mapToInt(SockShard::getQuantity).sum();
+        if (total < quantity)
+            return false;
+        if (shards.isEmpty()) {
+            sock.setQuantity(total - quantity);
+            return true;
+        }
+        shardCounts.merge(key, shards.size(), Math::max);
+
+        rebalance(sock, shards, total - quantity);
+        sockMetrics.shardTransfer();
+        return true;
+    }
+
+    /**
+     * Переносит остаток частей в sock.quantity, чтобы дальше работать с позицией как с обычной строкой.
+     * Части остаются заблокированными до конца текущей транзакции.
+     */
+    public void collect(Sock sock) {
+        if (!isSharded(new SockKey(sock.getColor(), sock.getCottonPercentage())))
+            return;
+
+        for (SockShard shard : sockShardRepository.findAllBySockIdOrderByShard(sock.getId())) {
+            sock.setQuantity(sock.getQuantity() + shard.getQuantity());
+            shard.setQuantity(0);
+        }
+    }
+
+    private void promote(SockKey key, int shards) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Boolean promoted;
+        try {
+            promoted = transaction.execute(status -> {
+                List<Sock> socks = sockRepository.lockAllByKeys(List.of(key));
+                if (socks.isEmpty())
+                    return false;
+
+                Sock sock = socks.get(0);
+                sockShardRepository.insertShards(sock.getId(), shards);
+                List<SockShard> locked = sockShardRepository.findAllBySockIdOrderByShard(sock.getId());
+                rebalance(sock, locked, sock.getQuantity() + locked.stream().mapToInt(SockShard::getQuantity).sum());
+                return true;
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to shard sock {}", key, e);
+            return;
+        }
+        if (!Boolean.TRUE.equals(promoted))
+            return;
+
+        shardCounts.merge(key, shards, Math::max);
+        sockMetrics.shardPromotion();
+        log.info("Sock {} split into {} shards", key, shards);
+    }
+
+    private void rebalance(Sock sock, List<SockShard> shards, int total) {
+        sock.setQuantity(0);
+        for (int i = 0; i < shards.size(); i++) {
+            shards.get(i).setQuantity(total / shards.size() + (i < total % shards.size() ? 1 : 0));
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.sockstask.util;
+
+/**
+ * @param replayed true, если запрос с этим ключом уже выполнялся и возвращен сохраненный результат
+ */
+public record IdempotentResult(int status, boolean replayed) {
+}
@@ -0,0 +1,5 @@
+package org.example.sockstask.util;
+
+public enum ImportJobState {
+    QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+}
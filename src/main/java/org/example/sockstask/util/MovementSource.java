@@ -0,0 +1,5 @@
+package org.example.sockstask.util;
+
+public enum MovementSource {
+    OPENING, INCOME, OUTCOME, MOVEMENT, UPDATE, BATCH
+}
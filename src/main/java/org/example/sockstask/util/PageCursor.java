@@ -0,0 +1,67 @@
+package org.example.sockstask.util;
+
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.exception.InvalidParametersException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Позиция последней отданной записи для keyset-пагинации: значение ключа сортировки и id.
+ * Клиенту передается в виде непрозрачной base64-строки.
+ */
+public record PageCursor(
+        FieldForSort fieldForSort,
+        boolean asc,
+        String key,
+        long id
+) {
+
+    private static final String SEPARATOR = "|";
+
+    public static PageCursor after(Sock sock, FieldForSort fieldForSort, boolean asc) {
+        String key = switch (fieldForSort) {
+            case COLOR -> sock.getColor();
+            case COTTON_PERCENTAGE -> Float.toString(sock.getCottonPercentage());
+            case NOTHING -> "";
+        };
+        return new PageCursor(fieldForSort, asc, key, sock.getId());
+    }
+
+    public static PageCursor decode(String cursor, FieldForSort fieldForSort, boolean asc) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+                    .split("\\|", 4);
+            PageCursor decoded = new PageCursor(
+                    FieldForSort.valueOf(parts[0]), Boolean.parseBoolean(parts[1]), parts[3], Long.parseLong(parts[2]));
+            if (decoded.fieldForSort() != fieldForSort || decoded.asc() != asc || !decoded.hasValidKey())
+                throw new InvalidParametersException();
+            return decoded;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new InvalidParametersException();
+        }
+    }
+
+    public String encode() {
+        String raw = fieldForSort + SEPARATOR + asc + SEPARATOR + id + SEPARATOR + key;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public float cottonPercentage() {
+        return Float.parseFloat(key);
+    }
+
+    /**
+     * Ключ соответствует сортировке: цвет не пустой, процент хлопка - число от 0 до 100, без сортировки ключа нет.
+     */
+    private boolean hasValidKey() {
+        return switch (fieldForSort) {
+            case COLOR -> !key.isEmpty();
+            case COTTON_PERCENTAGE -> {
+                float cottonPercentage = cottonPercentage();
+                yield cottonPercentage >= 0 && cottonPercentage <= 100;
+            }
+            case NOTHING -> key.isEmpty();
+        };
+    }
+}
@@ -0,0 +1,22 @@
+package org.example.sockstask.util;
+
+import java.util.Locale;
+
+public enum SockFileFormat {
+    CSV,
+    XLSX;
+
+    public static final String XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    /**
+     * Формат по типу содержимого, а если клиент его не указал (application/octet-stream) - по расширению файла.
+     * По умолчанию CSV.
+     */
+    public static SockFileFormat of(String contentType, String filename) {
+        if (XLSX_CONTENT_TYPE.equals(contentType))
+            return XLSX;
+        if (filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".xlsx"))
+            return XLSX;
+        return CSV;
+    }
+}
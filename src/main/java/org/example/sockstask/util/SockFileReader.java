@@ -0,0 +1,197 @@
+package org.example.sockstask.util;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.example.sockstask.exception.InvalidCsvFileException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Построчное чтение файла партии. В обоих форматах первая строка - заголовок с колонками
+ * color, cottonPercentage и quantity в любом порядке, без них файл отклоняется с InvalidCsvFileException.
+ * XLSX читается SAX-разбором первого листа: в памяти остаются только общие строки книги и текущая строка листа.
+ * Отсутствующие значения передаются пустой строкой.
+ */
+public final class SockFileReader {
+
+    private static final List<String> HEADERS = List.of("color", "cottonPercentage", "quantity");
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(String color, String cottonPercentage, String quantity);
+    }
+
+    @FunctionalInterface
+    public interface SockRowHandler {
+        void row(String color, float cottonPercentage, int quantity);
+    }
+
+    private SockFileReader() {
+    }
+
+    public static void readCsv(Reader reader, RowHandler handler) throws IOException {
+        CSVFormat csvFormat = CSVFormat.DEFAULT.builder()
+                .setDelimiter(',')
+                .setHeader()
+                .build();
+        try (CSVParser csvParser = new CSVParser(reader, csvFormat)) {
+            if (!csvParser.getHeaderMap().keySet().containsAll(HEADERS))
+                throw new InvalidCsvFileException();
+
+            for (CSVRecord csvRecord : csvParser) {
+                handler.row(value(csvRecord, "color"), value(csvRecord, "cottonPercentage"),
+                        value(csvRecord, "quantity"));
+            }
+        }
+    }
+
+    public static void readXlsx(Path path, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(path.toFile(), PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(pkg);
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext())
+                throw new InvalidCsvFileException();
+
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new XSSFSheetXMLHandler(xssfReader.getStylesTable(), null,
+                    new ReadOnlySharedStringsTable(pkg), new SheetHandler(handler),
+                    new RawNumberFormatter(), false));
+            try (InputStream sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new InvalidCsvFileException();
+        }
+    }
+
+    /**
+     * Разбор и проверка строки, общие для синхронной и фоновой загрузки: цвет не пустой, процент хлопка
+     * от 0 до 100, количество больше нуля. Верные строки передаются в valid, остальные - в invalid.
+     */
+    public static RowHandler validated(SockRowHandler valid, Runnable invalid) {
+        return (color, cottonPercentage, quantity) -> {
+            float parsedCottonPercentage;
+            int parsedQuantity;
+            try {
+                parsedCottonPercentage = Float.parseFloat(cottonPercentage);
+                parsedQuantity = Integer.parseInt(quantity);
+            } catch (IllegalArgumentException e) {
+                invalid.run();
+                return;
+            }
+            if (color.isBlank() || !(parsedCottonPercentage >= 0 && parsedCottonPercentage <= 100)
+                    || parsedQuantity <= 0) {
+                invalid.run();
+                return;
+            }
+            valid.row(color, parsedCottonPercentage, parsedQuantity);
+        };
+    }
+
+    /**
+     * Числовые ячейки передаются исходным значением, а не в формате ячейки: "1,000" или "80%" не разобрались бы
+     * как число. Процентный формат хранит долю, поэтому 80% передается как 80, а не 0.8.
+     */
+    private static class RawNumberFormatter extends DataFormatter {
+
+        private RawNumberFormatter() {
+            super(Locale.ROOT);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            return formatRawCellContents(value, formatIndex, formatString, false);
+        }
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString,
+                                            boolean use1904Windowing) {
+            String raw = NumberToTextConverter.toText(value);
+            if (formatString != null && formatString.contains("%"))
+                return new BigDecimal(raw).movePointRight(2).stripTrailingZeros().toPlainString();
+            return raw;
+        }
+    }
+
+    private static String value(CSVRecord csvRecord, String name) {
+        return csvRecord.isSet(name) ? csvRecord.get(name) : "";
+    }
+
+    private static class SheetHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final RowHandler handler;
+        private final int[] columns = new int[HEADERS.size()];
+        private final String[] values = new String[HEADERS.size()];
+        private boolean header = true;
+        private boolean empty;
+        private int nextColumn;
+
+        private SheetHandler(RowHandler handler) {
+            this.handler = handler;
+            Arrays.fill(columns, -1);
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            Arrays.fill(values, "");
+            empty = true;
+            nextColumn = 0;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference == null ? nextColumn : new CellReference(cellReference).getCol();
+            nextColumn = column + 1;
+            if (formattedValue == null || formattedValue.isBlank())
+                return;
+
+            if (header) {
+                int index = HEADERS.indexOf(formattedValue.trim());
+                if (index >= 0)
+                    columns[index] = column;
+                return;
+            }
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] == column) {
+                    values[i] = formattedValue;
+                    empty = false;
+                }
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (header) {
+                if (Arrays.stream(columns).anyMatch(column -> column < 0))
+                    throw new InvalidCsvFileException();
+                header = false;
+            } else if (!empty) {
+                handler.row(values[0], values[1], values[2]);
+            }
+        }
+    }
+}
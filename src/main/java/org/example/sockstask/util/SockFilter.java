@@ -0,0 +1,28 @@
+package org.example.sockstask.util;
+
+import java.util.List;
+
+public record SockFilter(
+        String color,
+        Comparison comparison,
+        List<Float> cottonPercentage
+) {
+
+    /**
+     * Проверка одной позиции в памяти, с тем же смыслом, что и фильтр в запросах к БД. Цвет сравнивается
+     * без учета регистра, как в словаре цветов: подписка могла начаться до первой записи этого цвета.
+     */
+    public boolean matches(SockKey key) {
+        if (color != null && !color.equalsIgnoreCase(key.color()))
+            return false;
+        if (cottonPercentage == null)
+            return true;
+        float value = cottonPercentage.get(0);
+        return switch (comparison) {
+            case moreThan -> key.cottonPercentage() > value;
+            case lessThan -> key.cottonPercentage() < value;
+            case equal -> key.cottonPercentage() == value;
+            case between -> key.cottonPercentage() >= value && key.cottonPercentage() <= cottonPercentage.get(1);
+        };
+    }
+}
@@ -0,0 +1,7 @@
+package org.example.sockstask.util;
+
+public record SockKey(
+        String color,
+        float cottonPercentage
+) {
+}
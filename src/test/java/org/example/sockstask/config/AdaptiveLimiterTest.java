@@ -0,0 +1,134 @@
+package org.example.sockstask.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    @DisplayName("Быстрые запросы при занятом лимите - лимит растет до max-limit")
+    void release_fast_expectAdditiveIncrease() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 0, Duration.ZERO));
+
+        for (int i = 0; i < 100; i++) {
+            acquireAll(limiter);
+            releaseAll(limiter, FAST);
+        }
+
+        assertEquals(8, limiter.currentLimit());
+    }
+
+    @Test
+    @DisplayName("Медленный или неудачный запрос - лимит уменьшается, но не ниже min-limit")
+    void release_slowOrFailed_expectMultiplicativeDecrease() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 0, Duration.ZERO));
+
+        assertTrue(limiter.tryAcquire());
+        limiter.release(SLOW, false);
+        assertEquals(3, limiter.currentLimit());
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST, true);
+        }
+        assertEquals(2, limiter.currentLimit());
+    }
+
+    @Test
+    @DisplayName("Лимит занят и очереди нет - отказ без ожидания")
+    void tryAcquire_noQueue_expectImmediateRejection() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 0, Duration.ofSeconds(10)));
+        acquireAll(limiter);
+
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @DisplayName("Лимит занят - запрос в очереди получает освободившееся место")
+    void tryAcquire_queued_expectAcquiredAfterRelease() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 1, Duration.ofSeconds(10)));
+        acquireAll(limiter);
+
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return limiter.tryAcquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(queued.isDone());
+        limiter.release(FAST, false);
+
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Очередь не дождалась места - отказ через queue-timeout")
+    void tryAcquire_queueTimeout_expectRejection() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 1, Duration.ofMillis(50)));
+        acquireAll(limiter);
+
+        assertFalse(limiter.tryAcquire());
+        assertEquals(4, limiter.inFlight());
+    }
+
+    @Test
+    @DisplayName("Очередь выключена - отказ без ожидания при свободной очереди")
+    void tryAcquire_queueingDisabled_expectImmediateRejection() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 4, Duration.ofSeconds(10)), false);
+        acquireAll(limiter);
+
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    @DisplayName("Освобождение без замера - лимит не меняется")
+    void release_unmeasured_expectSameLimit() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(limit(4, 0, Duration.ZERO));
+
+        for (int i = 0; i < 100; i++) {
+            acquireAll(limiter);
+            while (limiter.inFlight() > 0) {
+                limiter.release();
+            }
+        }
+
+        assertEquals(4, limiter.currentLimit());
+    }
+
+    private SocksProperties.Concurrency.Limit limit(int initialLimit, int queueCapacity, Duration queueTimeout) {
+        SocksProperties.Concurrency.Limit limit = new SocksProperties.Concurrency.Limit();
+        limit.setInitialLimit(initialLimit);
+        limit.setMinLimit(2);
+        limit.setMaxLimit(8);
+        limit.setLatencyThreshold(Duration.ofMillis(100));
+        limit.setQueueCapacity(queueCapacity);
+        limit.setQueueTimeout(queueTimeout);
+        return limit;
+    }
+
+    private void acquireAll(AdaptiveLimiter limiter) throws InterruptedException {
+        while (limiter.inFlight() < limiter.currentLimit()) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+
+    private void releaseAll(AdaptiveLimiter limiter, long latencyNanos) {
+        while (limiter.inFlight() > 0) {
+            limiter.release(latencyNanos, false);
+        }
+    }
+}
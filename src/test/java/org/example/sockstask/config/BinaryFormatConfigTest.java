@@ -0,0 +1,60 @@
+package org.example.sockstask.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksResponse;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Размер ответа GET /api/socks в каждом формате. Время сериализации меряет SerializationBenchmark.
+ */
+public class BinaryFormatConfigTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryFormatConfigTest.class);
+
+    private static final String[] COLORS = {"black", "blue", "green", "grey", "red", "white", "yellow"};
+
+    private static SocksResponse response;
+
+    private final BinaryFormatConfig config = new BinaryFormatConfig();
+
+    @BeforeAll
+    static void setUp() {
+        Random random = new Random(42);
+        List<SockDto> socks = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            socks.add(new SockDto(COLORS[random.nextInt(COLORS.length)],
+                    random.nextInt(10_000) / 100f, 1 + random.nextInt(1_000)));
+        }
+        response = SocksResponse.builder().socks(socks).build();
+    }
+
+    @Test
+    @DisplayName("CBOR и Smile - ответ читается обратно и меньше JSON")
+    void serialize_binaryFormats_expectSmallerThanJson() throws IOException {
+        ObjectMapper cbor = config.cborHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+        ObjectMapper smile = config.smileHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+
+        int json = Jackson2ObjectMapperBuilder.json().build().writeValueAsBytes(response).length;
+        byte[] cborBytes = cbor.writeValueAsBytes(response);
+        byte[] smileBytes = smile.writeValueAsBytes(response);
+        log.info("{} socks: JSON {} bytes, CBOR {} bytes, Smile {} bytes",
+                response.socks().size(), json, cborBytes.length, smileBytes.length);
+
+        assertEquals(response, cbor.readValue(cborBytes, SocksResponse.class));
+        assertEquals(response, smile.readValue(smileBytes, SocksResponse.class));
+        assertTrue(cborBytes.length < json);
+        assertTrue(smileBytes.length < json);
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.sockstask.integration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpSession;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.time.Duration;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Вместо потоковой реплики - отдельный PostgreSQL с другими данными: по ответу видно, из какой БД он прочитан.
+ */
+@AutoConfigureMockMvc
+@Testcontainers
+@SpringBootTest
+public class ReplicaRoutingIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Container
+    static final PostgreSQLContainer<?> replicaContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres")
+            .withInitScript("replica-schema.sql");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("socks.replica.enabled", () -> "true");
+        registry.add("socks.replica.url", replicaContainer::getJdbcUrl);
+        registry.add("socks.replica.username", replicaContainer::getUsername);
+        registry.add("socks.replica.password", replicaContainer::getPassword);
+        registry.add("socks.replica.read-your-writes", () -> "true");
+        registry.add("socks.replica.check-interval", () -> "1h");
+        registry.add("socks.replica.max-lag", () -> "1h");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private SocksProperties socksProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final String URL = "http://localhost/api/socks";
+
+    private final SockDto primarySock = new SockDto("Replica", 50f, 100);
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        sockService.sockIncome(primarySock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        socksProperties.getReplica().setMaxLag(Duration.ofHours(1));
+    }
+
+    @Test
+    @DisplayName("Чтение без записей в сессии - с реплики")
+    void getTotal_withoutWrites_expectReplica() throws Exception {
+        mockMvc.perform(get(URL + "/total").param("color", "Replica"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(7)
+                );
+    }
+
+    @Test
+    @DisplayName("Чтение после записи в той же сессии - с основной БД")
+    void getTotal_afterWriteInSession_expectPrimary() throws Exception {
+        MockHttpSession session = new MockHttpSession();
+        mockMvc.perform(post(URL + "/income")
+                        .session(session)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new SockDto("Replica", 50f, 5))))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get(URL + "/total").session(session).param("color", "Replica"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(105)
+                );
+        mockMvc.perform(get(URL + "/total").param("color", "Replica"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(7)
+                );
+    }
+
+    @Test
+    @DisplayName("Реплика отстала больше max-lag - чтение с основной БД")
+    void getTotal_replicaLagging_expectPrimary() throws Exception {
+        socksProperties.getReplica().setMaxLag(Duration.ZERO);
+
+        mockMvc.perform(get(URL + "/total").param("color", "Replica"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(100)
+                );
+    }
+}
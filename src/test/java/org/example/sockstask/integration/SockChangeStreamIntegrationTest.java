@@ -0,0 +1,160 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class SockChangeStreamIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("socks.changes.heartbeat-interval", () -> "1s");
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SocksProperties socksProperties;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    @DisplayName("Поток изменений - только позиции под фильтром, с новым остатком")
+    void changes_withFilter_expectMatchingEvents() throws Exception {
+        try (Stream<String> lines = subscribe("?color=white&comparison=moreThan&cottonPercentage=50", null)) {
+            Iterator<String> stream = lines.iterator();
+            sockService.sockIncome(new SockDto("White", 40f, 10));
+            sockService.sockIncome(new SockDto("Black", 80f, 10));
+            sockService.sockIncome(new SockDto("White", 80f, 15));
+            sockService.sockOutcome(new SockDto("White", 80f, 5));
+
+            Event income = next(stream);
+            Event outcome = next(stream);
+
+            assertEquals("change", income.name());
+            assertTrue(income.data().contains("\"color\":\"White\""));
+            assertTrue(income.data().contains("\"delta\":15"));
+            assertTrue(outcome.data().contains("\"delta\":-5"));
+            assertTrue(outcome.data().contains("\"quantity\":10"));
+        }
+    }
+
+    @Test
+    @DisplayName("Поток изменений - продолжение с Last-Event-ID")
+    void changes_withLastEventId_expectMissedEvents() throws Exception {
+        String lastEventId;
+        try (Stream<String> lines = subscribe("?color=Red", null)) {
+            Iterator<String> stream = lines.iterator();
+            sockService.sockIncome(new SockDto("Red", 10f, 1));
+            lastEventId = next(stream).id();
+        }
+
+        sockService.sockIncome(new SockDto("Red", 10f, 2));
+        sockService.sockIncome(new SockDto("Red", 10f, 3));
+
+        try (Stream<String> lines = subscribe("?color=Red", lastEventId)) {
+            Iterator<String> stream = lines.iterator();
+            assertTrue(next(stream).data().contains("\"delta\":2"));
+            assertTrue(next(stream).data().contains("\"delta\":3"));
+        }
+    }
+
+    @Test
+    @DisplayName("Поток изменений - неизвестный Last-Event-ID, первым приходит reset")
+    void changes_withUnknownLastEventId_expectReset() throws Exception {
+        try (Stream<String> lines = subscribe("", "0-1")) {
+            assertEquals("reset", next(lines.iterator()).name());
+        }
+    }
+
+    @Test
+    @DisplayName("Поток изменений - подписчиков больше max-subscribers, 503")
+    void changes_tooManySubscribers_expect503() throws Exception {
+        int maxSubscribers = socksProperties.getChanges().getMaxSubscribers();
+        socksProperties.getChanges().setMaxSubscribers(0);
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(
+                                    URI.create("http://localhost:" + port + "/api/socks/changes"))
+                            .header("Accept", "text/event-stream")
+                            .build(),
+                    HttpResponse.BodyHandlers.ofString());
+
+            assertEquals(503, response.statusCode());
+            assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            socksProperties.getChanges().setMaxSubscribers(maxSubscribers);
+        }
+    }
+
+    private Stream<String> subscribe(String query, String lastEventId) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + port + "/api/socks/changes" + query))
+                .header("Accept", "text/event-stream");
+        if (lastEventId != null)
+            request.header("Last-Event-ID", lastEventId);
+        HttpResponse<Stream<String>> response = client.send(request.build(), HttpResponse.BodyHandlers.ofLines());
+        assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    /**
+     * Следующее событие потока, комментарии пропускаются.
+     */
+    private Event next(Iterator<String> stream) {
+        String id = null;
+        String name = null;
+        List<String> data = new ArrayList<>();
+        while (stream.hasNext()) {
+            String line = stream.next();
+            if (line.isEmpty()) {
+                if (name != null)
+                    return new Event(id, name, String.join("\n", data));
+            } else if (line.startsWith("id:")) {
+                id = line.substring(3);
+            } else if (line.startsWith("event:")) {
+                name = line.substring(6);
+            } else if (line.startsWith("data:")) {
+                data.add(line.substring(5));
+            }
+        }
+        throw new AssertionError("Stream closed");
+    }
+
+    private record Event(String id, String name, String data) {
+    }
+}
@@ -0,0 +1,151 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+public class SockConcurrencyIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SockConcurrencyIntegrationTest.class);
+
+    private static final int STOCK = 1_000;
+    private static final int OUTCOMES = 3_000;
+    private static final int THREADS = 32;
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> THREADS);
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final SockDto stock = new SockDto("White", 80f, STOCK);
+
+    private final SockDto oneSock = new SockDto("White", 80f, 1);
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        sockService.sockIncome(stock);
+    }
+
+    @Test
+    @DisplayName("Параллельная отгрузка - без перепродажи")
+    void sockOutcome_parallel_expectNoOverselling() throws Exception {
+        AtomicInteger rejected = new AtomicInteger();
+
+        long elapsed = runInParallel(() -> {
+            try {
+                sockService.sockOutcome(oneSock);
+            } catch (NotEnoughSocksException e) {
+                rejected.incrementAndGet();
+            }
+        });
+
+        Sock sock = sockRepository.findByColorAndCottonPercentage(stock.color(), stock.cottonPercentage())
+                .orElseThrow();
+        assertEquals(0, sock.getQuantity());
+        assertEquals(OUTCOMES - STOCK, rejected.get());
+        log.info("Atomic outcome: {} ops/s", OUTCOMES * 1_000_000_000L / elapsed);
+    }
+
+    @Test
+    @DisplayName("Параллельная отгрузка - сравнение с read-modify-write: проданное совпадает со списанным")
+    void sockOutcome_parallel_expectExactStockUnlikeReadModifyWrite() throws Exception {
+        AtomicInteger sold = new AtomicInteger();
+        long readModifyWrite = runInParallel(() -> transactionTemplate.executeWithoutResult(status -> {
+            Sock sock = sockRepository.findByColorAndCottonPercentage(stock.color(), stock.cottonPercentage())
+                    .orElseThrow();
+            if (sock.getQuantity() >= 1) {
+                sock.setQuantity(sock.getQuantity() - 1);
+                sold.incrementAndGet();
+            }
+        }));
+        log.info("Read-modify-write outcome: {} ops/s, sold {}, written off {}",
+                OUTCOMES * 1_000_000_000L / readModifyWrite, sold.get(), STOCK - quantity());
+
+        setUp();
+        AtomicInteger atomicSold = new AtomicInteger();
+        long atomic = runInParallel(() -> {
+            try {
+                sockService.sockOutcome(oneSock);
+                atomicSold.incrementAndGet();
+            } catch (NotEnoughSocksException ignored) {
+            }
+        });
+        log.info("Atomic outcome: {} ops/s, sold {}, written off {}",
+                OUTCOMES * 1_000_000_000L / atomic, atomicSold.get(), STOCK - quantity());
+
+        // время только в логе: на общих CI-машинах сравнение по нему нестабильно
+        assertEquals(STOCK, atomicSold.get());
+        assertEquals(0, quantity());
+    }
+
+    private int quantity() {
+        return sockRepository.findByColorAndCottonPercentage(stock.color(), stock.cottonPercentage())
+                .orElseThrow()
+                .getQuantity();
+    }
+
+    private long runInParallel(Runnable outcome) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < OUTCOMES; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                outcome.run();
+                return null;
+            }));
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        return elapsed;
+    }
+}
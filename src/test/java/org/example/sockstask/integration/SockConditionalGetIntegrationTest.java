@@ -0,0 +1,131 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@AutoConfigureMockMvc
+@Testcontainers
+@SpringBootTest
+public class SockConditionalGetIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("socks.read-model.enabled", () -> "true");
+        registry.add("socks.etag.enabled", () -> "true");
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private SocksProperties socksProperties;
+
+    private final String URL = "http://localhost/api/socks";
+
+    private final SockDto sock = new SockDto("Black", 40f, 10);
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        sockService.sockIncome(sock);
+    }
+
+    @AfterEach
+    void tearDown() {
+        socksProperties.getEtag().setEnabled(true);
+    }
+
+    @Test
+    @DisplayName("Повторный запрос без изменений склада - 304")
+    void getSocks_notChanged_expect304Status() throws Exception {
+        String eTag = mockMvc.perform(get(URL).param("color", sock.color()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL).param("color", sock.color()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpectAll(
+                        status().isNotModified(),
+                        content().string("")
+                );
+    }
+
+    @Test
+    @DisplayName("Повторный запрос после записи - новые данные и новый ETag")
+    void getSocks_changed_expect200Status() throws Exception {
+        String eTag = mockMvc.perform(get(URL).param("color", sock.color()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        sockService.sockIncome(sock);
+
+        String newETag = mockMvc.perform(get(URL).param("color", sock.color()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.socks[0].quantity").value(20)
+                )
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(eTag, newETag);
+    }
+
+    @Test
+    @DisplayName("ETag зависит от фильтров")
+    void getSocks_otherFilter_expect200Status() throws Exception {
+        String eTag = mockMvc.perform(get(URL).param("color", sock.color()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(URL).param("color", sock.color()).param("limit", "1")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @DisplayName("ETag выключен - ответ без ETag, If-None-Match не учитывается")
+    void getSocks_etagDisabled_expect200Status() throws Exception {
+        String eTag = mockMvc.perform(get(URL).param("color", sock.color()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        socksProperties.getEtag().setEnabled(false);
+
+        mockMvc.perform(get(URL).param("color", sock.color()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpectAll(
+                        status().isOk(),
+                        header().doesNotExist(HttpHeaders.ETAG)
+                );
+    }
+}
@@ -1,7 +1,10 @@
 package org.example.sockstask.integration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.repository.SockRepository;
 import org.example.sockstask.service.SockService;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -18,11 +21,17 @@ import org.springframework.transaction.annotation.Transactional;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.List;
 import java.util.stream.Stream;
 
 import static org.example.sockstask.TestData.SOCK_DTO;
 import static org.example.sockstask.util.Constant.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @AutoConfigureMockMvc
@@ -52,6 +61,9 @@ public class SockControllerIntegrationTest {
     @Autowired
     private SockService sockService;
 
+    @Autowired
+    private SockRepository sockRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -96,6 +108,64 @@ public class SockControllerIntegrationTest {
 
     }
 
+    @Test
+    @DisplayName("Регистрация отпуска носков - повтор с тем же Idempotency-Key")
+    void outcomeSocks_retryWithIdempotencyKey_expectSingleOutcome() throws Exception {
+        sockService.sockIncome(SOCK_DTO);
+        SockDto request = new SockDto(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), 1);
+
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(post(URL + "/outcome")
+                            .header("Idempotency-Key", "outcome-1")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(objectMapper.writeValueAsString(request)))
+                    .andExpectAll(
+                            status().isOk()
+                    );
+        }
+
+        mockMvc.perform(get(URL + "/total").param("color", SOCK_DTO.color()))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(SOCK_DTO.quantity() - 1)
+                );
+    }
+
+    @Test
+    @DisplayName("Регистрация прихода носков - цвет в другом регистре попадает в ту же позицию")
+    void incomeSocks_otherCase_expectSamePosition() throws Exception {
+        sockService.sockIncome(SOCK_DTO);
+
+        mockMvc.perform(post(URL + "/income")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(
+                        new SockDto(SOCK_DTO.color().toUpperCase(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity()))))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get(URL + "/total").param("color", SOCK_DTO.color().toLowerCase()))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(SOCK_DTO.quantity() * 2),
+                        jsonPath("$.positions").value(1)
+                );
+    }
+
+    @Test
+    @DisplayName("Получение носков в CBOR по заголовку Accept")
+    void getSocks_acceptCbor_expectCbor() throws Exception {
+        sockService.sockIncome(SOCK_DTO);
+
+        byte[] body = mockMvc.perform(get(URL).param("color", SOCK_DTO.color()).accept(MediaType.APPLICATION_CBOR))
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_CBOR)
+                )
+                .andReturn().getResponse().getContentAsByteArray();
+
+        SocksResponse response = new ObjectMapper(new CBORFactory()).readValue(body, SocksResponse.class);
+        assertEquals(List.of(SOCK_DTO), response.socks());
+    }
+
     @Test
     @DisplayName("Регистрация отпуска носков - нехватка на складе")
     void outcomeSocks_notEnoughSocks_expect400() throws Exception{
@@ -124,6 +194,39 @@ public class SockControllerIntegrationTest {
 
     }
 
+    @Test
+    @DisplayName("Суммарное количество носков с фильтрацией")
+    void getTotal_expectSumOfMatching() throws Exception {
+        sockService.sockIncome(SOCK_DTO);
+        sockService.sockIncome(new SockDto(SOCK_DTO.color(), 10f, 5));
+        sockService.sockIncome(new SockDto("Black", 90f, 7));
+
+        mockMvc.perform(get(URL + "/total")
+                        .param("comparison", "moreThan")
+                        .param("cottonPercentage", "50")
+                        .param("groupByColor", "true"))
+                .andExpectAll(
+                        status().isOk(),
+                        jsonPath("$.quantity").value(SOCK_DTO.quantity() + 7),
+                        jsonPath("$.positions").value(2),
+                        jsonPath("$.quantityByColor.Black").value(7)
+                );
+    }
+
+    @Test
+    @DisplayName("Обновление носков - позиция с такими цветом и процентом хлопка уже есть")
+    void updateSock_existingKey_expect409() throws Exception {
+        sockService.sockIncome(SOCK_DTO);
+        sockService.sockIncome(new SockDto(SOCK_DTO.color(), 10f, 5));
+        Long id = sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), 10f).orElseThrow().getId();
+
+        mockMvc.perform(put(URL + "/" + id)
+                        .param("cottonPercentage", String.valueOf(SOCK_DTO.cottonPercentage())))
+                .andExpectAll(
+                        status().isConflict()
+                );
+    }
+
     @ParameterizedTest
     @DisplayName("Регистрация отпуска носков - не валидные параметры запроса")
     @MethodSource("invalidRequestParamsForOutcomeSocks")
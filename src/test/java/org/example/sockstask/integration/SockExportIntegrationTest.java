@@ -0,0 +1,155 @@
+package org.example.sockstask.integration;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@AutoConfigureMockMvc
+@Testcontainers
+@SpringBootTest
+public class SockExportIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final String URL = "http://localhost/api/socks";
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        sockService.sockIncome(new SockDto("White", 88.8f, 20));
+        sockService.sockIncome(new SockDto("Black", 40f, 5));
+        sockService.sockIncome(new SockDto("O'Neil", 40f, 7));
+    }
+
+    @Test
+    @DisplayName("Выгрузка в CSV - все позиции в формате загрузки")
+    void exportSocks_expectCsv() throws Exception {
+        assertEquals("color,cottonPercentage,quantity\nWhite,88.8,20\nBlack,40,5\nO'Neil,40,7\n", export(null, null));
+    }
+
+    @Test
+    @DisplayName("Выгрузка в CSV - с фильтрами, цвет с кавычкой")
+    void exportSocks_withFilter_expectFilteredCsv() throws Exception {
+        assertEquals("color,cottonPercentage,quantity\nO'Neil,40,7\n", export("O'Neil", "40"));
+    }
+
+    @Test
+    @DisplayName("Выгрузка в CSV и загрузка обратно - остатки удваиваются")
+    void exportSocks_thenUpload_expectDoubledQuantity() throws Exception {
+        sockService.uploadFromFile(new MockMultipartFile("file", "socks.csv", "text/csv",
+                export(null, null).getBytes()));
+
+        assertEquals("color,cottonPercentage,quantity\nWhite,88.8,40\nBlack,40,10\nO'Neil,40,14\n",
+                export(null, null));
+    }
+
+    @Test
+    @DisplayName("Потоковая выгрузка - по объекту JSON на строку")
+    void streamSocks_expectNdjson() throws Exception {
+        MvcResult result = mockMvc.perform(get(URL + "/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpectAll(
+                        status().isOk(),
+                        content().contentType(MediaType.APPLICATION_NDJSON),
+                        content().string("""
+                                {"color":"White","cottonPercentage":88.8,"quantity":20}
+                                {"color":"Black","cottonPercentage":40.0,"quantity":5}
+                                {"color":"O'Neil","cottonPercentage":40.0,"quantity":7}
+                                """)
+                );
+    }
+
+    @Test
+    @DisplayName("Потоковая выгрузка - с фильтрами и сортировкой")
+    void streamSocks_withFilter_expectFilteredNdjson() throws Exception {
+        MvcResult result = mockMvc.perform(get(URL + "/stream")
+                        .param("comparison", "lessThan")
+                        .param("cottonPercentage", "50")
+                        .param("fieldForSort", "COLOR")
+                        .param("asc", "false"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        List<SockDto> socks = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()
+                .lines()
+                .map(line -> {
+                    try {
+                        return objectMapper.readValue(line, SockDto.class);
+                    } catch (JsonProcessingException e) {
+                        throw new AssertionError(line, e);
+                    }
+                })
+                .toList();
+
+        assertEquals(List.of(new SockDto("O'Neil", 40f, 7), new SockDto("Black", 40f, 5)), socks);
+    }
+
+    private String export(String color, String cottonPercentage) throws Exception {
+        MockHttpServletRequestBuilder export = get(URL + "/export");
+        if (color != null)
+            export.param("color", color);
+        if (cottonPercentage != null)
+            export.param("cottonPercentage", cottonPercentage);
+
+        MvcResult result = mockMvc.perform(export)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
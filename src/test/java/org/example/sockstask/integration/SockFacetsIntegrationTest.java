@@ -0,0 +1,86 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.cache.SockFacets;
+import org.example.sockstask.dto.CottonBucket;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksFacetsResponse;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Testcontainers
+@SpringBootTest
+public class SockFacetsIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("socks.facets.bucket-width", () -> "25");
+        registry.add("socks.facets.rebuild-interval", () -> "1h");
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockFacets sockFacets;
+
+    @Test
+    @DisplayName("Суммы по цветам и корзинам меняются при каждой записи")
+    void getFacets_afterWrites_expectIncrementalTotals() {
+        sockService.sockIncome(new SockDto("White", 10f, 20));
+        sockService.sockIncome(new SockDto("White", 25f, 5));
+        sockService.sockIncome(new SockDto("Black", 100f, 7));
+        sockService.sockOutcome(new SockDto("White", 10f, 3));
+        sockService.uploadFromFile(new MockMultipartFile("file", "socks.csv", "text/csv",
+                "color,cottonPercentage,quantity\nBlack,60,4\nRed,74.9,1\n".getBytes()));
+
+        SocksFacetsResponse facets = sockService.getFacets();
+
+        assertEquals(Map.of("White", 22L, "Black", 11L, "Red", 1L), facets.quantityByColor());
+        assertEquals(List.of(
+                new CottonBucket(0, 25, 17),
+                new CottonBucket(25, 50, 5),
+                new CottonBucket(50, 75, 5),
+                new CottonBucket(75, 100, 7)), facets.quantityByCottonPercentage());
+    }
+
+    @Test
+    @DisplayName("Пересчет во время записей - каждая запись учтена ровно один раз")
+    void getFacets_writesDuringRebuild_expectExactTotals() throws Exception {
+        int writes = 200;
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < writes; i++) {
+                sockService.sockIncome(new SockDto("Navy", 40f, 1));
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            ReflectionTestUtils.invokeMethod(sockFacets, "rebuild");
+        }
+        writer.join();
+
+        assertEquals(writes, sockService.getFacets().quantityByColor().get("Navy"));
+    }
+}
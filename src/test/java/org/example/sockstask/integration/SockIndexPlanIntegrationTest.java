@@ -0,0 +1,80 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сумма по цвету читается из уникального индекса позиции (INCLUDE quantity) без обращения к таблице.
+ */
+@Testcontainers
+@SpringBootTest
+public class SockIndexPlanIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        for (int i = 0; i < 100; i++) {
+            sockService.sockIncome(new SockDto(i % 2 == 0 ? "White" : "Black", i + 1, 10));
+        }
+        // index-only scan нужна карта видимости
+        jdbcTemplate.execute("VACUUM ANALYZE sock");
+    }
+
+    @Test
+    @DisplayName("Сумма по цвету - index-only scan по уникальному индексу, дублирующего индекса нет")
+    void totalByColor_expectIndexOnlyScanOnUniqueIndex() {
+        String plan = transactionTemplate.execute(status -> {
+            // на 100 строках планировщик иначе выберет seq scan
+            jdbcTemplate.execute("SET LOCAL enable_seqscan = off");
+            jdbcTemplate.execute("SET LOCAL enable_bitmapscan = off");
+            return String.join("\n", jdbcTemplate.queryForList(
+                    "EXPLAIN SELECT SUM(quantity), COUNT(*) FROM sock WHERE color = 'White'",
+                    String.class));
+        });
+
+        assertTrue(plan.contains("Index Only Scan using uk_sock_color_cotton_percentage"), plan);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pg_indexes WHERE indexname = 'idx_sock_color_cotton_percentage_quantity'",
+                Integer.class));
+    }
+}
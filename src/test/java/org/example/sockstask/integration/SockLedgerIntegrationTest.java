@@ -0,0 +1,134 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.repository.SockMovementRepository;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+public class SockLedgerIntegrationTest {
+
+    private static final int INCOMES = 2_000;
+    private static final int THREADS = 16;
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("socks.ledger.deferred-income", () -> "true");
+        registry.add("socks.ledger.compaction-interval", () -> "100ms");
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private SockMovementRepository sockMovementRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final SockDto oneSock = new SockDto("White", 80f, 1);
+
+    @BeforeEach
+    void setUp() {
+        sockMovementRepository.deleteAll();
+        sockRepository.deleteAll();
+    }
+
+    @Test
+    @DisplayName("Журнал движений - параллельный приход сворачивается в остаток")
+    void sockIncome_parallel_expectCompactedStock() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < INCOMES; i++) {
+            futures.add(executor.submit(() -> sockService.sockIncome(oneSock)));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertEquals(INCOMES, sockService.getStock(oneSock.color(), oneSock.cottonPercentage(), null).quantity());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline && sockRepository
+                .findByColorAndCottonPercentage(oneSock.color(), oneSock.cottonPercentage())
+                .map(sock -> sock.getQuantity() < INCOMES).orElse(true)) {
+            Thread.sleep(50);
+        }
+        assertEquals(INCOMES, sockRepository
+                .findByColorAndCottonPercentage(oneSock.color(), oneSock.cottonPercentage())
+                .orElseThrow().getQuantity());
+    }
+
+    @Test
+    @DisplayName("Журнал движений - отгрузка видит несвернутый приход и остаток на момент времени")
+    void sockOutcome_expectPendingIncomeFoldedAndPointInTimeStock() throws Exception {
+        sockService.sockIncome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 5));
+        Thread.sleep(10);
+        Instant afterIncome = Instant.now();
+        Thread.sleep(10);
+
+        sockService.sockOutcome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 3));
+        assertThrows(NotEnoughSocksException.class,
+                () -> sockService.sockOutcome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 3)));
+
+        assertEquals(2, sockService.getStock(oneSock.color(), oneSock.cottonPercentage(), null).quantity());
+        assertEquals(5, sockService.getStock(oneSock.color(), oneSock.cottonPercentage(), afterIncome).quantity());
+    }
+
+    @Test
+    @DisplayName("Журнал движений - сумма сразу видит отложенный приход")
+    void getTotalWithFilters_expectPendingIncomeCounted() {
+        sockService.sockIncome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 5));
+
+        assertEquals(5, sockService.getTotalWithFilters(oneSock.color(), null, null, false).quantity());
+    }
+
+    @Test
+    @DisplayName("Журнал движений - старые движения сворачиваются в одну строку, остаток не меняется")
+    void rollUpCompactedBefore_expectSameStock() throws Exception {
+        sockService.sockIncome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 5));
+        sockService.sockOutcome(new SockDto(oneSock.color(), oneSock.cottonPercentage(), 3));
+        Thread.sleep(10);
+        Instant before = Instant.now();
+
+        Integer purged = transactionTemplate.execute(status -> sockMovementRepository.rollUpCompactedBefore(before));
+
+        assertEquals(2, purged);
+        assertEquals(1, sockMovementRepository.count());
+        assertEquals(2, sockService.getStock(oneSock.color(), oneSock.cottonPercentage(), before).quantity());
+        assertEquals(2, sockService.getStock(oneSock.color(), oneSock.cottonPercentage(), null).quantity());
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.sockstask.integration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksResponse;
+import org.example.sockstask.service.SockService;
+import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Testcontainers
+@SpringBootTest
+public class SockQueryCacheIntegrationTest {
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("socks.query-cache.enabled", () -> "true");
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    @DisplayName("Повторный запрос с фильтром - из кэша, после записи - новые данные")
+    void getAllWithFilters_repeated_expectCachedUntilWrite() {
+        sockService.sockIncome(new SockDto("Teal", 30f, 10));
+        sockService.sockIncome(new SockDto("Teal", 60f, 5));
+
+        SocksResponse first = query();
+        double hits = hits();
+        SocksResponse second = query();
+
+        assertEquals(first, second);
+        assertEquals(hits + 1, hits());
+
+        sockService.sockOutcome(new SockDto("Teal", 30f, 4));
+        SocksResponse afterWrite = query();
+
+        assertEquals(hits + 1, hits());
+        assertEquals(List.of(new SockDto("Teal", 30f, 6), new SockDto("Teal", 60f, 5)), afterWrite.socks());
+    }
+
+    private SocksResponse query() {
+        return sockService.getAllWithFilters("Teal", Comparison.between, new ArrayList<>(List.of(0f, 100f)),
+                FieldForSort.COTTON_PERCENTAGE, true, null, null);
+    }
+
+    private double hits() {
+        return meterRegistry.get("cache.gets")
+                .tags("cache", "socks-filter-query", "result", "hit")
+                .functionCounter()
+                .count();
+    }
+}
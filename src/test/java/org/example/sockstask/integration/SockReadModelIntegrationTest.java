@@ -0,0 +1,191 @@
+package org.example.sockstask.integration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.sockstask.cache.SockReadModel;
+import org.example.sockstask.entity.Sock;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.example.sockstask.util.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+public class SockReadModelIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SockReadModelIntegrationTest.class);
+
+    // цвета в разном регистре и не латиницей: порядок копии и БД должен совпадать и для них
+    private static final List<String> COLORS = List.of("black", "Black", "blue", "green", "red", "white", "Ёлочный", "ёлочный", "éclat");
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("socks.read-model.enabled", () -> "true");
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private SockReadModel sockReadModel;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("color,cottonPercentage,quantity\n");
+        for (int i = 0; i < 2_000; i++) {
+            csv.append(COLORS.get(random.nextInt(COLORS.size()))).append(',')
+                    .append(random.nextInt(1_000) / 10f).append(',')
+                    .append(1 + random.nextInt(100)).append('\n');
+        }
+        sockService.uploadFromFile(new MockMultipartFile("socks.csv", csv.toString().getBytes()));
+    }
+
+    @Test
+    @DisplayName("Копия в памяти совпадает с запросом к БД")
+    void findAllWithFilters_expectSameAsDatabase() {
+        assertTrue(sockReadModel.isReady());
+
+        for (SockFilter filter : filters()) {
+            for (FieldForSort fieldForSort : FieldForSort.values()) {
+                for (boolean asc : List.of(true, false)) {
+                    assertEquals(
+                            ids(transactionTemplate.execute(status ->
+                                    sockRepository.findAllWithFilters(filter, fieldForSort, asc, null, null))),
+                            ids(sockReadModel.findAllWithFilters(filter, fieldForSort, asc, null, null)),
+                            filter + " " + fieldForSort + " " + asc);
+
+                    assertEquals(
+                            ids(pages(after -> transactionTemplate.execute(status ->
+                                    sockRepository.findAllWithFilters(filter, fieldForSort, asc, after, 50)),
+                                    fieldForSort, asc)),
+                            ids(pages(after -> sockReadModel.findAllWithFilters(filter, fieldForSort, asc, after, 50),
+                                    fieldForSort, asc)),
+                            "pages " + filter + " " + fieldForSort + " " + asc);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Копия в памяти обновляется после коммита записи")
+    void updateSock_expectReadModelUpdated() {
+        SockFilter filter = new SockFilter("red", Comparison.moreThan, List.of(0f));
+        Sock sock = sockReadModel.findAllWithFilters(filter, FieldForSort.NOTHING, true, null, 1).get(0);
+
+        sockService.updateSock(sock.getId(), "purple", null, 3);
+
+        assertTrue(ids(sockReadModel.findAllWithFilters(filter, FieldForSort.NOTHING, true, null, null))
+                .stream().noneMatch(sock.getId()::equals));
+        List<Sock> purple = sockReadModel.findAllWithFilters(
+                new SockFilter("purple", Comparison.equal, null), FieldForSort.NOTHING, true, null, null);
+        assertEquals(1, purple.size());
+        assertEquals(3, purple.get(0).getQuantity());
+    }
+
+    @Test
+    @DisplayName("Копия в памяти - чтение не обращается к БД")
+    void getAllWithFilters_expectNoDatabaseCalls() {
+        SockFilter filter = new SockFilter("blue", Comparison.between, List.of(20f, 60f));
+        int iterations = 2_000;
+
+        double before = connectionAcquires();
+        long database = measure(iterations, () -> transactionTemplate.execute(status ->
+                sockRepository.findAllWithFilters(filter, FieldForSort.COTTON_PERCENTAGE, true, null, 20)));
+        double afterDatabase = connectionAcquires();
+        long memory = measure(iterations, () -> sockService.getAllWithFilters("blue", Comparison.between,
+                new ArrayList<>(List.of(20f, 60f)), FieldForSort.COTTON_PERCENTAGE, true, 20, null));
+        double afterMemory = connectionAcquires();
+
+        log.info("Database: {} ops/s, read model: {} ops/s",
+                iterations * 1_000_000_000L / database, iterations * 1_000_000_000L / memory);
+        assertTrue(afterDatabase - before >= iterations);
+        assertEquals(afterDatabase, afterMemory);
+    }
+
+    private double connectionAcquires() {
+        return meterRegistry.find("hikaricp.connections.acquire").timers().stream()
+                .mapToDouble(Timer::count)
+                .sum();
+    }
+
+    private List<SockFilter> filters() {
+        List<SockFilter> filters = new ArrayList<>();
+        for (String color : new String[]{null, "green"}) {
+            filters.add(new SockFilter(color, Comparison.equal, null));
+            filters.add(new SockFilter(color, Comparison.moreThan, List.of(50f)));
+            filters.add(new SockFilter(color, Comparison.lessThan, List.of(50f)));
+            filters.add(new SockFilter(color, Comparison.equal, List.of(33.3f)));
+            filters.add(new SockFilter(color, Comparison.between, List.of(10f, 40f)));
+        }
+        return filters;
+    }
+
+    private List<Sock> pages(Function<PageCursor, List<Sock>> page,
+                             FieldForSort fieldForSort, boolean asc) {
+        List<Sock> all = new ArrayList<>();
+        PageCursor after = null;
+        List<Sock> socks;
+        do {
+            socks = page.apply(after);
+            all.addAll(socks);
+            if (!socks.isEmpty())
+                after = PageCursor.after(socks.get(socks.size() - 1), fieldForSort, asc);
+        } while (!socks.isEmpty());
+        return all;
+    }
+
+    private List<Long> ids(List<Sock> socks) {
+        return socks.stream().map(Sock::getId).toList();
+    }
+
+    private long measure(int iterations, Supplier<?> query) {
+        for (int i = 0; i < iterations / 10; i++) {
+            query.get();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            query.get();
+        }
+        return System.nanoTime() - begin;
+    }
+}
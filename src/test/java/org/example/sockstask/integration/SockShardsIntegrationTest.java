@@ -0,0 +1,152 @@
+package org.example.sockstask.integration;
+
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.SockService;
+import org.example.sockstask.service.impl.SockShards;
+import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.SockKey;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+public class SockShardsIntegrationTest {
+
+    private static final int STOCK = 1_000;
+    private static final int OUTCOMES = 3_000;
+    private static final int THREADS = 16;
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+        registry.add("spring.datasource.hikari.maximum-pool-size", () -> THREADS);
+        registry.add("socks.sharding.auto-promote-concurrency", () -> "4");
+        registry.add("socks.sharding.auto-shards", () -> "8");
+    }
+
+    @Autowired
+    private SockService sockService;
+
+    @Autowired
+    private SockRepository sockRepository;
+
+    @Autowired
+    private SockShards sockShards;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final SockDto stock = new SockDto("White", 80f, STOCK);
+
+    private final SockDto oneSock = new SockDto("White", 80f, 1);
+
+    @BeforeEach
+    void setUp() {
+        sockRepository.deleteAll();
+        sockService.sockIncome(stock);
+    }
+
+    @Test
+    @DisplayName("Разбитая позиция - параллельная отгрузка без перепродажи")
+    void sockOutcome_parallel_expectShardedWithoutOverselling() throws Exception {
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < OUTCOMES; i++) {
+            futures.add(executor.submit(() -> {
+                try {
+                    sockService.sockOutcome(oneSock);
+                } catch (NotEnoughSocksException e) {
+                    rejected.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        assertTrue(sockShards.isSharded(new SockKey(stock.color(), stock.cottonPercentage())));
+        assertEquals(OUTCOMES - STOCK, rejected.get());
+        assertEquals(0, sockService.getStock(stock.color(), stock.cottonPercentage(), null).quantity());
+    }
+
+    @Test
+    @DisplayName("Разбитая позиция - в выборке и сумме остаток всех частей")
+    void getAllWithFilters_sharded_expectSummedQuantity() throws Exception {
+        sockOutcome_parallel_expectShardedWithoutOverselling();
+        for (int i = 0; i < 10; i++) {
+            sockService.sockIncome(new SockDto(stock.color(), stock.cottonPercentage(), 3));
+        }
+
+        assertEquals(30, sockService.getAllWithFilters(stock.color(), Comparison.equal, null,
+                FieldForSort.NOTHING, true, null, null).socks().get(0).quantity());
+        assertEquals(30, sockService.getTotalWithFilters(stock.color(), Comparison.equal, null, false).quantity());
+    }
+
+    @Test
+    @DisplayName("Разбитая позиция - findAll для загрузки копии в памяти дочитывает остаток частей")
+    void findAll_sharded_expectSummedQuantity() throws Exception {
+        getAllWithFilters_sharded_expectSummedQuantity();
+
+        assertTrue(sockRepository.hasShards());
+        assertEquals(30, sockRepository.findAll().get(0).getTotalQuantity());
+    }
+
+    @Test
+    @DisplayName("Обновление разбитой позиции - в ответе остаток без двойного учета частей")
+    void updateSock_sharded_expectCollectedQuantity() throws Exception {
+        getAllWithFilters_sharded_expectSummedQuantity();
+        Long id = sockRepository.findByColorAndCottonPercentage(stock.color(), stock.cottonPercentage())
+                .orElseThrow().getId();
+
+        assertEquals(30, sockService.updateSock(id, null, null, null).quantity());
+        assertEquals(5, sockService.updateSock(id, null, null, 5).quantity());
+        assertEquals(5, sockService.getTotalWithFilters(stock.color(), Comparison.equal, null, false).quantity());
+    }
+
+    @Test
+    @DisplayName("Позицию разбил другой экземпляр - отгрузка берет остаток из частей")
+    void sockOutcome_shardedElsewhere_expectTakenFromShards() {
+        SockDto red = new SockDto("Red", 40f, 100);
+        sockService.sockIncome(red);
+        Long id = sockRepository.findByColorAndCottonPercentage(red.color(), red.cottonPercentage())
+                .orElseThrow().getId();
+        jdbcTemplate.update("INSERT INTO sock_shard (sock_id, shard, quantity) VALUES (?, 0, 60), (?, 1, 40)", id, id);
+        jdbcTemplate.update("UPDATE sock SET quantity = 0 WHERE id = ?", id);
+
+        sockService.sockOutcome(new SockDto(red.color(), red.cottonPercentage(), 70));
+
+        assertTrue(sockShards.isSharded(new SockKey(red.color(), red.cottonPercentage())));
+        assertEquals(30, sockService.getTotalWithFilters(red.color(), Comparison.equal, null, false).quantity());
+        assertThrows(NotEnoughSocksException.class,
+                () -> sockService.sockOutcome(new SockDto(red.color(), red.cottonPercentage(), 31)));
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.sockstask.integration;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Нагрузочное сравнение обычных потоков Tomcat и виртуальных потоков с ограничением конкурентности:
+ * p99 задержки и пропускная способность смеси приходов и агрегирующих чтений. Сами цифры только выводятся в лог,
+ * проверяются отсутствие ошибок, точный учет принятых приходов и верхняя граница p99.
+ * Виртуальные потоки требуют Java 21: оба режима запускает ./gradlew threadModeTest на JVM 21.
+ */
+@Testcontainers
+public class ThreadModeLoadIntegrationTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ThreadModeLoadIntegrationTest.class);
+
+    private static final int REQUESTS = 5_000;
+    private static final int CLIENTS = 400;
+    private static final long P99_BOUND_MS = 10_000;
+    private static final Pattern QUANTITY = Pattern.compile("\"quantity\":(\\d+)");
+
+    private static final Map<String, String> results = new ConcurrentHashMap<>();
+
+    @Container
+    static final PostgreSQLContainer<?> sqlContainer = new PostgreSQLContainer<>("postgres:latest")
+            .withDatabaseName("socks")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", sqlContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", sqlContainer::getUsername);
+        registry.add("spring.datasource.password", sqlContainer::getPassword);
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @AfterAll
+    static void report() {
+        results.forEach((mode, result) -> log.info("{}: {}", mode, result));
+    }
+
+    @Nested
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = {"server.tomcat.threads.max=50", "socks.concurrency.enabled=false"})
+    class PlatformThreads extends LoadTest {
+    }
+
+    @Nested
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = {"spring.threads.virtual.enabled=true", "socks.concurrency.enabled=true"})
+    class VirtualThreads extends LoadTest {
+    }
+
+    abstract class LoadTest {
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        @DisplayName("Смешанная нагрузка - без ошибок сервера, приход учтен точно, p99 в пределах")
+        void mixedLoad_expectNoServerErrors() throws Exception {
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newFixedThreadPool(CLIENTS))
+                    .build();
+            String base = "http://localhost:" + port + "/api/socks";
+            HttpRequest income = HttpRequest.newBuilder(URI.create(base + "/income"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"color\":\"White\",\"cottonPercentage\":80,\"quantity\":1}"))
+                    .build();
+            HttpRequest total = HttpRequest.newBuilder(URI.create(base + "/total?color=White")).GET().build();
+
+            long before = quantity(client, total);
+            Semaphore inFlight = new Semaphore(CLIENTS);
+            long[] latencies = new long[REQUESTS];
+            AtomicInteger rejected = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            AtomicInteger accepted = new AtomicInteger();
+            List<CompletableFuture<?>> futures = new ArrayList<>();
+
+            long begin = System.nanoTime();
+            for (int i = 0; i < REQUESTS; i++) {
+                int n = i;
+                inFlight.acquire();
+                long start = System.nanoTime();
+                futures.add(client.sendAsync(n % 2 == 0 ? income : total, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> {
+                            latencies[n] = System.nanoTime() - start;
+                            if (error != null || response.statusCode() >= 500 && response.statusCode() != 503)
+                                failed.incrementAndGet();
+                            else if (response.statusCode() == 503)
+                                rejected.incrementAndGet();
+                            else if (n % 2 == 0 && response.statusCode() == 201)
+                                accepted.incrementAndGet();
+                            inFlight.release();
+                        }));
+            }
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.MINUTES);
+            long elapsed = System.nanoTime() - begin;
+
+            Arrays.sort(latencies);
+            long p99 = TimeUnit.NANOSECONDS.toMillis(latencies[REQUESTS * 99 / 100]);
+            results.put(getClass().getSimpleName(), String.format("p99 %d ms, %d req/s, %d rejected",
+                    p99, REQUESTS * 1_000_000_000L / elapsed, rejected.get()));
+
+            assertEquals(0, failed.get());
+            // каждый принятый приход учтен ровно один раз, отклоненные 503 не записаны
+            assertEquals(before + accepted.get(), quantity(client, total));
+            // верхняя граница, а не сравнение режимов: ее превышение - зависание, а не медленная машина
+            assertTrue(p99 < P99_BOUND_MS, "p99 " + p99 + " ms");
+        }
+
+        private long quantity(HttpClient client, HttpRequest total) throws Exception {
+            HttpResponse<String> response = client.send(total, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 404)
+                return 0;
+            assertEquals(200, response.statusCode());
+            Matcher matcher = QUANTITY.matcher(response.body());
+            return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.sockstask.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SockMetricsTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SockMetrics sockMetrics = new SockMetrics(meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    @DisplayName("Приход в транзакции - учитывается только после коммита")
+    void income_inTransaction_expectCountedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        sockMetrics.income(5);
+        sockMetrics.batchChunk(10, 3);
+
+        assertEquals(0, meterRegistry.counter("socks.income.units").count());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+
+        assertEquals(5, meterRegistry.counter("socks.income.units").count());
+        assertEquals(10, meterRegistry.counter("socks.batch.rows").count());
+    }
+
+    @Test
+    @DisplayName("Отпуск в откаченной транзакции - не учитывается, отказ учитывается")
+    void outcome_rolledBack_expectNotCounted() {
+        TransactionSynchronizationManager.initSynchronization();
+        sockMetrics.outcome(5);
+        sockMetrics.outcomeRejected();
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        assertEquals(0, meterRegistry.counter("socks.outcome.units").count());
+        assertEquals(1, meterRegistry.counter("socks.outcome.rejected").count());
+    }
+
+    @Test
+    @DisplayName("Запись без транзакции - учитывается сразу")
+    void income_withoutTransaction_expectCountedImmediately() {
+        sockMetrics.income(3);
+
+        assertEquals(3, meterRegistry.counter("socks.income.units").count());
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.sockstask.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.entity.IdempotencyKey;
+import org.example.sockstask.exception.IdempotencyKeyMismatchException;
+import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.repository.IdempotencyKeyRepository;
+import org.example.sockstask.service.impl.IdempotencyServiceImpl;
+import org.example.sockstask.util.IdempotentResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.example.sockstask.TestData.*;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Spy
+    private SocksProperties socksProperties = new SocksProperties();
+
+    @Spy
+    private PlatformTransactionManager transactionManager = new NoOpTransactionManager();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private IdempotencyServiceImpl idempotencyService;
+
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        idempotencyService.stop();
+    }
+
+    @Test
+    @DisplayName("Идемпотентность - повтор отвечает из кэша без обращения к БД")
+    void execute_expectReplayFromCache() {
+        when(idempotencyKeyRepository.insertIfAbsent(eq("key-1"), anyString(), eq(201), any())).thenReturn(1);
+
+        IdempotentResult first = idempotencyService.execute("key-1", "income", SOCK_DTO, 201, executions::incrementAndGet);
+        IdempotentResult retry = idempotencyService.execute("key-1", "income", SOCK_DTO, 201, executions::incrementAndGet);
+
+        assertEquals(new IdempotentResult(201, false), first);
+        assertEquals(new IdempotentResult(201, true), retry);
+        assertEquals(1, executions.get());
+        verify(idempotencyKeyRepository, times(1)).insertIfAbsent(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("Идемпотентность - ключ уже использован для другого запроса")
+    void execute_expectIdempotencyKeyMismatchException() {
+        when(idempotencyKeyRepository.insertIfAbsent(eq("key-1"), anyString(), eq(200), any())).thenReturn(0);
+        when(idempotencyKeyRepository.findById("key-1"))
+                .thenReturn(Optional.of(new IdempotencyKey("key-1", "other", 200, Instant.now())));
+
+        assertThrows(IdempotencyKeyMismatchException.class,
+                () -> idempotencyService.execute("key-1", "outcome", SOCK_DTO, 200, executions::incrementAndGet));
+        assertEquals(0, executions.get());
+    }
+
+    @Test
+    @DisplayName("Идемпотентность - после ошибки повтор выполняется заново")
+    void execute_expectRetryAfterFailure() {
+        when(idempotencyKeyRepository.insertIfAbsent(eq("key-1"), anyString(), eq(200), any())).thenReturn(1);
+
+        assertThrows(NotEnoughSocksException.class, () -> idempotencyService.execute("key-1", "outcome", SOCK_DTO, 200,
+                () -> {
+                    throw new NotEnoughSocksException();
+                }));
+        IdempotentResult retry = idempotencyService.execute("key-1", "outcome", SOCK_DTO, 200, executions::incrementAndGet);
+
+        assertEquals(new IdempotentResult(200, false), retry);
+        assertEquals(1, executions.get());
+    }
+
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.sockstask.service;
+
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.ImportJobStatus;
+import org.example.sockstask.exception.ImportJobNotFoundException;
+import org.example.sockstask.exception.TooManyImportJobsException;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.impl.ImportJobServiceImpl;
+import org.example.sockstask.service.impl.MovementLedger;
+import org.example.sockstask.util.ImportJobState;
+import org.example.sockstask.util.SockKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ImportJobServiceTest {
+
+    @Mock
+    private SockRepository sockRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SockMetrics sockMetrics;
+
+    @Mock
+    private MovementLedger movementLedger;
+
+    @Mock
+    private ColorDictionary colorDictionary;
+
+    @Spy
+    private SocksProperties socksProperties = new SocksProperties();
+
+    @InjectMocks
+    private ImportJobServiceImpl importJobService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(colorDictionary.register(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        importJobService.stop();
+    }
+
+    @Test
+    @DisplayName("Фоновая загрузка - части коммитятся, неверные строки пропускаются")
+    void submit_expectCommittedChunksAndRejectedRows() throws Exception {
+        socksProperties.getBatch().setChunkSize(2);
+        importJobService.start();
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                "color,cottonPercentage,quantity\nwhite,33.5,10\nwhite,33.5,5\nblack,90,40\nred,abc,1\nred,50,-1\nred,50,1\n"
+                        .getBytes());
+
+        ImportJobStatus status = awaitFinished(importJobService.submit(mockFile).id());
+
+        assertEquals(ImportJobState.COMPLETED, status.state());
+        assertEquals(6, status.rowsParsed());
+        assertEquals(4, status.rowsApplied());
+        assertEquals(2, status.rowsRejected());
+        verify(transactionManager, times(2)).commit(any());
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("white", 33.5f), 15,
+                new SockKey("black", 90f), 40));
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("red", 50f), 1));
+    }
+
+    @Test
+    @DisplayName("Фоновая загрузка - нет нужных колонок")
+    void submit_expectFailedOnInvalidHeader() throws Exception {
+        importJobService.start();
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                "color,percentage,quantity\nwhite,33.5,10\n".getBytes());
+
+        ImportJobStatus status = awaitFinished(importJobService.submit(mockFile).id());
+
+        assertEquals(ImportJobState.FAILED, status.state());
+        verify(sockRepository, never()).upsertAll(any());
+    }
+
+    @Test
+    @DisplayName("Фоновая загрузка - отмена задачи в очереди и лимит задач")
+    void submit_expectCancelAndLimit() throws Exception {
+        socksProperties.getImportJobs().setMaxConcurrentJobs(1);
+        socksProperties.getImportJobs().setQueueCapacity(1);
+        importJobService.start();
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(sockRepository).upsertAll(any());
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                "color,cottonPercentage,quantity\nwhite,33.5,10\n".getBytes());
+
+        UUID running = importJobService.submit(mockFile).id();
+        UUID queued = importJobService.submit(mockFile).id();
+        assertThrows(TooManyImportJobsException.class, () -> importJobService.submit(mockFile));
+
+        assertEquals(ImportJobState.CANCELLED, importJobService.cancel(queued).state());
+        release.countDown();
+        assertEquals(ImportJobState.COMPLETED, awaitFinished(running).state());
+        assertThrows(ImportJobNotFoundException.class, () -> importJobService.getStatus(UUID.randomUUID()));
+    }
+
+    private ImportJobStatus awaitFinished(UUID id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        ImportJobStatus status = importJobService.getStatus(id);
+        while (status.finishedAt() == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = importJobService.getStatus(id);
+        }
+        return status;
+    }
+}
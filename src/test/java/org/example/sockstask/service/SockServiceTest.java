@@ -1,23 +1,62 @@
 package org.example.sockstask.service;
 
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.example.sockstask.cache.ColorDictionary;
+import org.example.sockstask.cache.SockReadModel;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.dto.MovementDto;
+import org.example.sockstask.dto.RejectedMovement;
+import org.example.sockstask.dto.SockDto;
+import org.example.sockstask.dto.SocksResponse;
 import org.example.sockstask.entity.Sock;
+import org.example.sockstask.event.SockChangeStream;
+import org.example.sockstask.event.SocksChangedEvent;
 import org.example.sockstask.exception.InvalidCsvFileException;
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.exception.MovementsRejectedException;
 import org.example.sockstask.exception.NotEnoughSocksException;
+import org.example.sockstask.exception.SockAlreadyExistsException;
 import org.example.sockstask.exception.SockNotFoundException;
 import org.example.sockstask.mapper.SockMapper;
+import org.example.sockstask.metrics.SockMetrics;
+import org.example.sockstask.repository.SockMovementRepository;
 import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.service.impl.IncomeCoalescer;
+import org.example.sockstask.service.impl.MovementLedger;
+import org.example.sockstask.service.impl.SockShards;
 import org.example.sockstask.service.impl.SockServiceImpl;
+import org.example.sockstask.util.Comparison;
+import org.example.sockstask.util.FieldForSort;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.PageCursor;
+import org.example.sockstask.util.SockFileFormat;
+import org.example.sockstask.util.SockFilter;
+import org.example.sockstask.util.SockKey;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Stream;
 
@@ -36,82 +75,306 @@ public class SockServiceTest {
     @Mock
     private SockMapper sockMapper;
 
+    @Mock
+    private SockReadModel sockReadModel;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private IncomeCoalescer incomeCoalescer;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private SockMetrics sockMetrics;
+
+    @Mock
+    private MovementLedger movementLedger;
+
+    @Mock
+    private SockMovementRepository sockMovementRepository;
+
+    @Mock
+    private SockShards sockShards;
+
+    @Mock
+    private ColorDictionary colorDictionary;
+
+    @Mock
+    private SockChangeStream sockChangeStream;
+
+    @Spy
+    private SocksProperties socksProperties = new SocksProperties();
+
     @InjectMocks
     private SockServiceImpl sockService;
 
+    @BeforeEach
+    void setUp() {
+        lenient().when(colorDictionary.register(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        lenient().when(colorDictionary.find(any())).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("Получение носков - страница с курсором на следующую")
+    void getAllWithFilters_expectNextCursor() {
+        when(sockRepository.findAllWithFilters(any(), eq(FieldForSort.COTTON_PERCENTAGE), eq(true), isNull(), eq(2)))
+                .thenReturn(List.of(new Sock(7L, "White", 10f, 5), new Sock(3L, "Black", 20f, 5)));
+
+        SocksResponse response = sockService.getAllWithFilters(null, Comparison.equal, null,
+                FieldForSort.COTTON_PERCENTAGE, true, 1, null);
+
+        assertEquals(1, response.socks().size());
+        PageCursor cursor = PageCursor.decode(response.nextCursor(), FieldForSort.COTTON_PERCENTAGE, true);
+        assertEquals(7L, cursor.id());
+        assertEquals(10f, cursor.cottonPercentage());
+    }
+
+    @Test
+    @DisplayName("Получение носков - курсор от другой сортировки")
+    void getAllWithFilters_expectInvalidParametersException() {
+        String cursor = PageCursor.after(SOCK, FieldForSort.COLOR, true).encode();
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.getAllWithFilters(null, Comparison.equal, null,
+                        FieldForSort.COTTON_PERCENTAGE, true, 1, cursor));
+    }
+
+    @Test
+    @DisplayName("Получение носков - курсор с процентом хлопка вне 0..100")
+    void getAllWithFilters_invalidCursorKey_expectInvalidParametersException() {
+        String cursor = new PageCursor(FieldForSort.COTTON_PERCENTAGE, true, "NaN", 7L).encode();
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.getAllWithFilters(null, Comparison.equal, null,
+                        FieldForSort.COTTON_PERCENTAGE, true, 1, cursor));
+        verifyNoInteractions(sockRepository);
+    }
+
     @Test
-    @DisplayName("Добавление количества к уже существующим носкам")
-    void sockIncome_expectAddQuantityToExist() {
-        Sock mockedSock = mock(Sock.class);
-        when(sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
-                .thenReturn(Optional.of(mockedSock));
+    @DisplayName("Получение носков - limit больше допустимого")
+    void getAllWithFilters_limitTooLarge_expectInvalidParametersException() {
+        int limit = socksProperties.getPagination().getMaxLimit() + 1;
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.getAllWithFilters(null, Comparison.equal, null,
+                        FieldForSort.NOTHING, true, limit, null));
+        verifyNoInteractions(sockRepository);
+    }
+
+    @Test
+    @DisplayName("Потоковая выгрузка - параметры проверяются до начала ответа")
+    void streamAllWithFilters_expectInvalidParametersException() {
+        List<Float> cottonPercentage = new ArrayList<>(List.of(30f));
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.streamAllWithFilters(null, Comparison.between, cottonPercentage,
+                        FieldForSort.NOTHING, true));
+        verifyNoInteractions(sockRepository);
+    }
+
+    @Test
+    @DisplayName("Выгрузка в CSV - параметры проверяются до начала ответа")
+    void exportCsv_expectInvalidParametersException() {
+        List<Float> cottonPercentage = new ArrayList<>(List.of(30f, 40f));
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.exportCsv(null, Comparison.equal, cottonPercentage));
+        verifyNoInteractions(sockRepository);
+    }
+
+    @Test
+    @DisplayName("Подписка на изменения - фильтр с цветом в написании словаря")
+    void subscribeChanges_expectDictionaryColorFilter() {
+        when(colorDictionary.find("WHITE")).thenReturn("White");
+        List<Float> cottonPercentage = new ArrayList<>(List.of(30f, 40f));
+
+        sockService.subscribeChanges("WHITE", Comparison.between, cottonPercentage, "1-5");
+
+        verify(sockChangeStream, times(1))
+                .subscribe(new SockFilter("White", Comparison.between, cottonPercentage), "1-5");
+    }
+
+    @Test
+    @DisplayName("Подписка на изменения - неверный фильтр")
+    void subscribeChanges_expectInvalidParametersException() {
+        List<Float> cottonPercentage = new ArrayList<>(List.of(30f));
+
+        assertThrows(InvalidParametersException.class,
+                () -> sockService.subscribeChanges(null, Comparison.between, cottonPercentage, null));
+        verifyNoInteractions(sockChangeStream);
+    }
+
+    @Test
+    @DisplayName("Приход носков - один атомарный upsert")
+    void sockIncome_expectAtomicUpsert() {
         sockService.sockIncome(SOCK_DTO);
 
         verify(sockRepository, times(1))
-                .findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
-        verify(mockedSock, times(1)).income(SOCK_DTO.quantity());
+                .addQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity());
+        verify(sockRepository, never()).findByColorAndCottonPercentage(anyString(), anyFloat());
+    }
+
+    @Test
+    @DisplayName("Приход носков - цвет в написании словаря")
+    void sockIncome_otherCase_expectDictionaryColor() {
+        when(colorDictionary.register("WHITE")).thenReturn("White");
 
+        sockService.sockIncome(new SockDto("WHITE", 50f, 10));
+
+        verify(sockRepository, times(1)).addQuantity("White", 50f, 10);
     }
 
     @Test
-    @DisplayName("Добавление ранее не существовавших носков")
-    void sockIncome_expectCreateNewSock() {
-        when(sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
-                .thenReturn(Optional.empty());
-        when(sockMapper.toSock(SOCK_DTO)).thenReturn(SOCK);
+    @DisplayName("Приход носков - режим объединения записей")
+    void sockIncome_coalescing_expectNoDatabaseWrite() {
+        when(incomeCoalescer.isEnabled()).thenReturn(true);
 
         sockService.sockIncome(SOCK_DTO);
 
-        verify(sockRepository, times(1))
-                .findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
-        verify(sockRepository, times(1)).save(SOCK);
-        verify(sockMapper, times(1)).toSock(SOCK_DTO);
+        verify(incomeCoalescer, times(1))
+                .add(new SockKey(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()), SOCK_DTO.quantity());
+        verifyNoInteractions(sockRepository, transactionManager);
+    }
+
+    @Test
+    @DisplayName("Приход носков - только запись в журнал движений")
+    void sockIncome_deferred_expectLedgerAppendOnly() {
+        when(movementLedger.isDeferredIncome()).thenReturn(true);
+
+        sockService.sockIncome(SOCK_DTO);
+
+        verify(movementLedger, times(1)).recordDeferred(
+                Map.of(new SockKey(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()), SOCK_DTO.quantity()),
+                MovementSource.INCOME);
+        verifyNoInteractions(sockRepository, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Остаток на момент времени - по журналу движений")
+    void getStock_at_expectLedgerSum() {
+        Instant at = Instant.parse("2024-01-01T00:00:00Z");
+        when(sockMovementRepository.stockAt(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), at)).thenReturn(7L);
+
+        SockDto stock = sockService.getStock(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), at);
+
+        assertEquals(7, stock.quantity());
+        verify(sockMovementRepository, never()).currentStock(anyString(), anyFloat());
     }
 
     @Test
     @DisplayName("Отгрузка носков - успех")
     void sockOutcome_expectSuccess() {
-        Sock mockedSock = mock(Sock.class);
-        when(mockedSock.getQuantity()).thenReturn(50);
-        when(sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
-                .thenReturn(Optional.of(mockedSock));
+        when(sockRepository.subtractQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity()))
+                .thenReturn(1);
 
         sockService.sockOutcome(SOCK_DTO);
 
         verify(sockRepository, times(1))
-                .findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
-        verify(mockedSock, times(1)).outcome(SOCK_DTO.quantity());
-
+                .subtractQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity());
+        verify(sockRepository, never()).existsByColorAndCottonPercentage(anyString(), anyFloat());
     }
 
 
+    @Test
+    @DisplayName("Отгрузка носков - разбитая позиция списывается из частей")
+    void sockOutcome_sharded_expectTakeFromShards() {
+        SockKey key = new SockKey(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
+        when(sockShards.isSharded(key)).thenReturn(true);
+        when(sockShards.take(key, SOCK_DTO.quantity())).thenReturn(true);
+
+        sockService.sockOutcome(SOCK_DTO);
+
+        verify(sockRepository, never()).subtractQuantity(anyString(), anyFloat(), anyInt());
+        verify(sockMetrics, times(1)).outcome(SOCK_DTO.quantity());
+    }
+
     @Test
     @DisplayName("Отгрузка носков - не хватает носков на складе")
     void sockOutcome_expectNotEnoughSocksException() {
-        Sock mockedSock = mock(Sock.class);
-        when(mockedSock.getQuantity()).thenReturn(0);
-        when(sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
-                .thenReturn(Optional.of(mockedSock));
-
+        when(sockRepository.subtractQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity()))
+                .thenReturn(0);
+        when(sockRepository.existsByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
+                .thenReturn(true);
 
         assertThrows(NotEnoughSocksException.class,
                 () -> sockService.sockOutcome(SOCK_DTO));
-        verify(sockRepository, times(1))
-                .findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
-        verify(mockedSock, never()).outcome(SOCK_DTO.quantity());
+        verify(sockMetrics, times(1)).outcomeRejected();
     }
 
+    @Test
+    @DisplayName("Отгрузка носков - позицию разбил другой экземпляр, остаток берется из частей")
+    void sockOutcome_shardedElsewhere_expectTakenFromShards() {
+        SockKey key = new SockKey(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
+        when(sockRepository.subtractQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity()))
+                .thenReturn(0);
+        when(sockShards.take(key, SOCK_DTO.quantity())).thenReturn(true);
+
+        sockService.sockOutcome(SOCK_DTO);
+
+        verify(sockMetrics, never()).outcomeRejected();
+        verify(sockMetrics, times(1)).outcome(SOCK_DTO.quantity());
+    }
 
     @Test
     @DisplayName("Отгрузка носков - таких носков нет")
     void sockOutcome_expectSockNotFoundException() {
-        when(sockRepository.findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
-                .thenReturn(Optional.empty());
+        when(sockRepository.subtractQuantity(SOCK_DTO.color(), SOCK_DTO.cottonPercentage(), SOCK_DTO.quantity()))
+                .thenReturn(0);
+        when(sockRepository.existsByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage()))
+                .thenReturn(false);
 
         assertThrows(SockNotFoundException.class,
                 () -> sockService.sockOutcome(SOCK_DTO));
-        verify(sockRepository, times(1))
-                .findByColorAndCottonPercentage(SOCK_DTO.color(), SOCK_DTO.cottonPercentage());
+    }
+
+    @Test
+    @DisplayName("Пакет движений - строки одной позиции объединяются")
+    void applyMovements_expectMergedUpsert() {
+        when(sockRepository.lockAllByKeys(any())).thenReturn(List.of(new Sock(1L, "White", 80f, 5)));
+
+        sockService.applyMovements(List.of(
+                new MovementDto("White", 80f, 3),
+                new MovementDto("White", 80f, -6),
+                new MovementDto("Black", 10f, 4)));
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("White", 80f), -3,
+                new SockKey("Black", 10f), 4));
+    }
+
+    @Test
+    @DisplayName("Пакет движений - нехватка отклоняет весь пакет")
+    void applyMovements_expectMovementsRejectedException() {
+        when(sockRepository.lockAllByKeys(any())).thenReturn(List.of(new Sock(1L, "White", 80f, 5)));
+
+        MovementsRejectedException exception = assertThrows(MovementsRejectedException.class,
+                () -> sockService.applyMovements(List.of(
+                        new MovementDto("Black", 10f, 4),
+                        new MovementDto("White", 80f, -4),
+                        new MovementDto("White", 80f, -4),
+                        new MovementDto("Red", 50f, -1))));
+
+        assertEquals(List.of(1, 2, 3), exception.getRejected().stream().map(RejectedMovement::line).toList());
+        verify(sockRepository, never()).upsertAll(any());
+    }
+
+    @Test
+    @DisplayName("Пакет движений - переполнение количества отклоняет строки позиции")
+    void applyMovements_overflow_expectMovementsRejectedException() {
+        when(sockRepository.lockAllByKeys(any())).thenReturn(List.of(new Sock(1L, "White", 80f, 5)));
+
+        MovementsRejectedException exception = assertThrows(MovementsRejectedException.class,
+                () -> sockService.applyMovements(List.of(
+                        new MovementDto("Black", 10f, Integer.MAX_VALUE),
+                        new MovementDto("Black", 10f, Integer.MAX_VALUE),
+                        new MovementDto("White", 80f, Integer.MAX_VALUE))));
+
+        assertEquals(List.of(0, 1, 2), exception.getRejected().stream().map(RejectedMovement::line).toList());
+        assertTrue(exception.getRejected().stream().allMatch(r -> r.reason().equals("Quantity overflow")));
+        verify(sockRepository, never()).upsertAll(any());
     }
 
     @ParameterizedTest
@@ -120,7 +383,7 @@ public class SockServiceTest {
     void updateSock_expectSuccess(String color, Float cottonPercentage, Integer quantity, List<String> fields) {
         Long id = 1L;
         Sock mocked = mock(Sock.class);
-        when(sockRepository.findById(id)).thenReturn(Optional.of(mocked));
+        when(sockRepository.lockById(id)).thenReturn(Optional.of(mocked));
 
         sockService.updateSock(id, color, cottonPercentage, quantity);
 
@@ -138,7 +401,7 @@ public class SockServiceTest {
     @DisplayName("Обновление записи - нет такой записи")
     void updateSock_expectSockNotFoundException() {
         Long id = 1L;
-        when(sockRepository.findById(id)).thenReturn(Optional.empty());
+        when(sockRepository.lockById(id)).thenReturn(Optional.empty());
 
         assertThrows(SockNotFoundException.class,
                 () -> sockService.updateSock(id, COLOR_EXAMPLE,
@@ -146,18 +409,123 @@ public class SockServiceTest {
         );
     }
 
+    @Test
+    @DisplayName("Обновление записи - позиция с новыми цветом и процентом хлопка уже есть")
+    void updateSock_expectSockAlreadyExistsException() {
+        Long id = 1L;
+        when(sockRepository.lockById(id)).thenReturn(Optional.of(new Sock(id, "White", 80f, 5)));
+        when(sockRepository.findByColorAndCottonPercentage("Black", 80f))
+                .thenReturn(Optional.of(new Sock(2L, "Black", 80f, 3)));
+
+        assertThrows(SockAlreadyExistsException.class,
+                () -> sockService.updateSock(id, "Black", null, null));
+        verify(movementLedger, never()).recordApplied(any(), any());
+    }
+
     @Test
     @DisplayName("Загрузка данных из файла - успех")
     void uploadFromFile_expectSuccess() {
         MockMultipartFile mockFile = new MockMultipartFile("test.csv",
                 "color,cottonPercentage,quantity\nwhite,33.5,10\nblack,90,40\n".getBytes());
 
-        when(sockRepository.findByColorAndCottonPercentage(anyString(), anyFloat()))
-                .thenReturn(Optional.empty());
+        sockService.uploadFromFile(mockFile);
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("white", 33.5f), 10,
+                new SockKey("black", 90f), 40));
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из файла - дубликаты суммируются, запись частями, одно bulk-событие")
+    void uploadFromFile_expectMergedChunks() {
+        socksProperties.getBatch().setChunkSize(2);
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                "color,cottonPercentage,quantity\nwhite,33.5,10\nwhite,33.5,5\nblack,90,40\nred,50,1\n".getBytes());
+
+        sockService.uploadFromFile(mockFile);
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("white", 33.5f), 15,
+                new SockKey("black", 90f), 40));
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("red", 50f), 1));
+        verify(eventPublisher, times(1)).publishEvent(SocksChangedEvent.all());
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из файла - одна часть, событие с позициями")
+    void uploadFromFile_singleChunk_expectKeyedEvent() {
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                "color,cottonPercentage,quantity\nwhite,33.5,10\nwhite,33.5,5\n".getBytes());
 
         sockService.uploadFromFile(mockFile);
 
-        verify(sockRepository, times(1)).saveAll(anyList());
+        verify(eventPublisher, times(1)).publishEvent(new SocksChangedEvent(Map.of(
+                new SockKey("white", 33.5f), 15)));
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из файла - сумма количеств позиции больше int")
+    void uploadFromFile_expectInvalidParametersException() {
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                ("color,cottonPercentage,quantity\nwhite,33.5," + Integer.MAX_VALUE + "\nwhite,33.5,1\n").getBytes());
+
+        assertThrows(InvalidParametersException.class, () -> sockService.uploadFromFile(mockFile));
+        verify(sockRepository, never()).upsertAll(any());
+    }
+
+    @ParameterizedTest
+    @DisplayName("Загрузка данных из файла - значения вне допустимых, как и в фоновой загрузке")
+    @ValueSource(strings = {"white,150,10", "white,-1,10", "white,33.5,0", "white,33.5,-5", " ,33.5,10"})
+    void uploadFromFile_invalidRow_expectInvalidCsvFileException(String row) {
+        MockMultipartFile mockFile = new MockMultipartFile("test.csv",
+                ("color,cottonPercentage,quantity\nblack,90,40\n" + row + "\n").getBytes());
+
+        assertThrows(InvalidCsvFileException.class, () -> sockService.uploadFromFile(mockFile));
+        verify(sockRepository, never()).upsertAll(any());
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из XLSX файла - числа с форматом ячейки")
+    void uploadFromFile_xlsxFormattedNumbers_expectRawValues() throws Exception {
+        MockMultipartFile mockFile = new MockMultipartFile("file", "test.xlsx", SockFileFormat.XLSX_CONTENT_TYPE,
+                xlsx(List.of("color", "cottonPercentage", "quantity"),
+                        List.of("white", new Formatted(0.57, "0%"), new Formatted(1000, "#,##0")),
+                        List.of("black", new Formatted(33.5, "0.00"), new Formatted(12345, "#,##0.00"))));
+
+        sockService.uploadFromFile(mockFile);
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("white", 57f), 1000,
+                new SockKey("black", 33.5f), 12345));
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из XLSX файла")
+    void uploadFromFile_xlsx_expectSuccess() throws Exception {
+        socksProperties.getBatch().setChunkSize(2);
+        MockMultipartFile mockFile = new MockMultipartFile("file", "test.xlsx", SockFileFormat.XLSX_CONTENT_TYPE,
+                xlsx(List.of("quantity", "color", "cottonPercentage"),
+                        List.of(10, "white", 33.5), List.of(5, "white", 33.5), List.of(40, "black", 90), List.of(1, "red", 50)));
+
+        sockService.uploadFromFile(mockFile);
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("white", 33.5f), 15,
+                new SockKey("black", 90f), 40));
+        verify(sockRepository, times(1)).upsertAll(Map.of(
+                new SockKey("red", 50f), 1));
+    }
+
+    @Test
+    @DisplayName("Загрузка данных из XLSX файла - нет нужных колонок")
+    void uploadFromFile_xlsx_expectInvalidCsvFileException() throws Exception {
+        MockMultipartFile mockFile = new MockMultipartFile("file", "test.xlsx", SockFileFormat.XLSX_CONTENT_TYPE,
+                xlsx(List.of("color", "percentage", "quantity"), List.of("white", 33.5, 10)));
+
+        assertThrows(InvalidCsvFileException.class,
+                () -> sockService.uploadFromFile(mockFile)
+        );
     }
 
     @Test
@@ -166,15 +534,41 @@ public class SockServiceTest {
         MockMultipartFile mockFile = new MockMultipartFile("test1.csv",
                 "color,percentage,quantity\nwhite,33.5,10\nblack,90,40\n".getBytes());
 
-        lenient().when(sockRepository.findByColorAndCottonPercentage(anyString(), anyFloat()))
-                .thenReturn(Optional.empty());
-
         assertThrows(InvalidCsvFileException.class,
                 () -> sockService.uploadFromFile(mockFile)
         );
 
     }
 
+    @SafeVarargs
+    private static byte[] xlsx(List<Object>... rows) throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet();
+            for (int i = 0; i < rows.length; i++) {
+                Row row = sheet.createRow(i);
+                for (int j = 0; j < rows[i].size(); j++) {
+                    Object value = rows[i].get(j);
+                    if (value instanceof Formatted formatted) {
+                        CellStyle style = workbook.createCellStyle();
+                        style.setDataFormat(workbook.createDataFormat().getFormat(formatted.format()));
+                        Cell cell = row.createCell(j);
+                        cell.setCellValue(formatted.value());
+                        cell.setCellStyle(style);
+                    } else if (value instanceof Number number)
+                        row.createCell(j).setCellValue(number.doubleValue());
+                    else
+                        row.createCell(j).setCellValue((String) value);
+                }
+            }
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+
+    private record Formatted(double value, String format) {
+    }
+
     private static Stream<Arguments> requestParamsForUpdateSock() {
         return Stream.of(
                 Arguments.of("White", null, null, List.of("color")),
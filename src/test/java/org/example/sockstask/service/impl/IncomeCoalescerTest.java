@@ -0,0 +1,167 @@
+package org.example.sockstask.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.example.sockstask.config.SocksProperties;
+import org.example.sockstask.event.SocksChangedEvent;
+import org.example.sockstask.entity.IncomeDeadLetter;
+import org.example.sockstask.exception.InvalidParametersException;
+import org.example.sockstask.repository.IncomeDeadLetterRepository;
+import org.example.sockstask.repository.SockRepository;
+import org.example.sockstask.util.MovementSource;
+import org.example.sockstask.util.SockKey;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class IncomeCoalescerTest {
+
+    private static final SockKey WHITE = new SockKey("White", 50f);
+    private static final SockKey BLACK = new SockKey("Black", 20f);
+    private static final SockKey BAD = new SockKey("Bad", 10f);
+
+    @Mock
+    private SockRepository sockRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private MovementLedger movementLedger;
+
+    @Mock
+    private IncomeDeadLetterRepository incomeDeadLetterRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SocksProperties socksProperties = new SocksProperties();
+    private IncomeCoalescer incomeCoalescer;
+
+    @BeforeEach
+    void setUp() {
+        socksProperties.getCoalescing().setEnabled(true);
+        socksProperties.getCoalescing().setFlushInterval(Duration.ofHours(1));
+        incomeCoalescer = new IncomeCoalescer(sockRepository, socksProperties, transactionManager, eventPublisher,
+                meterRegistry, movementLedger, incomeDeadLetterRepository);
+        incomeCoalescer.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        incomeCoalescer.stop();
+    }
+
+    @Test
+    @DisplayName("Приходы по одной позиции складываются и записываются одним upsert")
+    void flush_expectMergedUpsert() {
+        incomeCoalescer.add(WHITE, 5);
+        incomeCoalescer.add(WHITE, 7);
+        incomeCoalescer.add(BLACK, 1);
+
+        incomeCoalescer.flush();
+
+        Map<SockKey, Integer> deltas = Map.of(WHITE, 12, BLACK, 1);
+        verify(sockRepository, times(1)).upsertAll(deltas);
+        verify(movementLedger, times(1)).recordApplied(deltas, MovementSource.INCOME);
+        verify(eventPublisher, times(1)).publishEvent(new SocksChangedEvent(deltas));
+    }
+
+    @Test
+    @DisplayName("Пустая пачка - в БД ничего не пишется")
+    void flush_empty_expectNoWrites() {
+        incomeCoalescer.flush();
+
+        verifyNoInteractions(sockRepository, eventPublisher);
+    }
+
+    @Test
+    @DisplayName("Позиция, которая не записывается, уходит в dead letter, остальные записываются и дальше")
+    void flush_permanentFailure_expectBadKeyDeadLettered() {
+        doThrow(new DataIntegrityViolationException("value too long"))
+                .when(sockRepository).upsertAll(argThat(deltas -> deltas.containsKey(BAD)));
+        incomeCoalescer.add(WHITE, 5);
+        incomeCoalescer.add(BAD, 3);
+
+        incomeCoalescer.flush();
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(WHITE, 5));
+        verify(incomeDeadLetterRepository, times(1)).save(argThat((IncomeDeadLetter deadLetter) ->
+                deadLetter.getColor().equals(BAD.color()) && deadLetter.getDelta() == 3));
+        assertEquals(1, meterRegistry.get("socks.coalescing.dead-lettered").counter().count());
+        assertEquals(0, meterRegistry.get("socks.coalescing.dropped").counter().count());
+
+        incomeCoalescer.add(BLACK, 2);
+        incomeCoalescer.flush();
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(BLACK, 2));
+        verify(sockRepository, times(1)).upsertAll(Map.of(BAD, 3));
+    }
+
+    @Test
+    @DisplayName("Временная ошибка - пачка возвращается в очередь и записывается при следующей попытке")
+    void flush_transientFailure_expectRequeued() {
+        doThrow(new CannotCreateTransactionException("no connection"))
+                .doNothing()
+                .when(sockRepository).upsertAll(anyMap());
+        incomeCoalescer.add(WHITE, 5);
+
+        incomeCoalescer.flush();
+        incomeCoalescer.flush();
+
+        verify(sockRepository, times(2)).upsertAll(Map.of(WHITE, 5));
+        verify(eventPublisher, times(1)).publishEvent(new SocksChangedEvent(Map.of(WHITE, 5)));
+        assertEquals(0, meterRegistry.get("socks.coalescing.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("Сумма прихода позиции больше int - приход отклоняется, пачка записывается")
+    void add_overflow_expectInvalidParametersException() {
+        incomeCoalescer.add(WHITE, Integer.MAX_VALUE);
+
+        assertThrows(InvalidParametersException.class, () -> incomeCoalescer.add(WHITE, 1));
+        incomeCoalescer.flush();
+
+        verify(sockRepository, times(1)).upsertAll(Map.of(WHITE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    @DisplayName("Dead letter не записывается - приращение отбрасывается и считается")
+    void flush_deadLetterFailure_expectDropped() {
+        doThrow(new DataIntegrityViolationException("value too long"))
+                .when(sockRepository).upsertAll(anyMap());
+        doThrow(new DataIntegrityViolationException("value too long"))
+                .when(incomeDeadLetterRepository).save(any());
+        incomeCoalescer.add(BAD, 3);
+
+        incomeCoalescer.flush();
+
+        assertEquals(0, meterRegistry.get("socks.coalescing.dead-lettered").counter().count());
+        assertEquals(1, meterRegistry.get("socks.coalescing.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("Read-your-writes на реплике - приход ждет записи пачки")
+    void add_readYourWrites_expectAwaitFlush() {
+        socksProperties.getReplica().setEnabled(true);
+        socksProperties.getReplica().setReadYourWrites(true);
+        socksProperties.getCoalescing().setAwaitTimeout(Duration.ofMillis(10));
+
+        assertThrows(IllegalStateException.class, () -> incomeCoalescer.add(WHITE, 5));
+    }
+}
@@ -0,0 +1,16 @@
+CREATE TABLE sock (
+    id bigserial PRIMARY KEY,
+    color varchar(30) NOT NULL,
+    cotton_percentage float NOT NULL,
+    quantity integer NOT NULL,
+    CONSTRAINT uq_sock_color_cotton_percentage UNIQUE (color, cotton_percentage)
+);
+
+CREATE TABLE sock_shard (
+    sock_id bigint NOT NULL REFERENCES sock (id) ON DELETE CASCADE,
+    shard integer NOT NULL,
+    quantity integer NOT NULL,
+    CONSTRAINT pk_sock_shard PRIMARY KEY (sock_id, shard)
+);
+
+INSERT INTO sock (color, cotton_percentage, quantity) VALUES ('Replica', 50, 7);